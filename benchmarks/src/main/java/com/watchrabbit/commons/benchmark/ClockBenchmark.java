@@ -0,0 +1,92 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.benchmark;
+
+import com.watchrabbit.commons.clock.CachedClock;
+import com.watchrabbit.commons.clock.Clock;
+import com.watchrabbit.commons.clock.SystemClock;
+import java.time.Instant;
+import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of reading time through {@code Clock}, compared with direct
+ * {@code System.currentTimeMillis()}.
+ *
+ * @author Mariusz
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClockBenchmark {
+
+    private final Clock systemClock = SystemClock.getInstance();
+
+    private final CachedClock cachedClock = CachedClock.create(1, TimeUnit.MILLISECONDS);
+
+    @TearDown
+    public void tearDown() {
+        cachedClock.stop();
+    }
+
+    @Benchmark
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    @Benchmark
+    public long systemClockTimestamp() {
+        return systemClock.getTimestamp();
+    }
+
+    @Benchmark
+    public Instant systemClockInstant() {
+        return systemClock.getInstant();
+    }
+
+    @Benchmark
+    public Calendar systemClockCalendar() {
+        return systemClock.getCalendar();
+    }
+
+    @Benchmark
+    public long cachedClockTimestamp() {
+        return cachedClock.getTimestamp();
+    }
+
+    @Benchmark
+    public Instant cachedClockInstant() {
+        return cachedClock.getInstant();
+    }
+
+    @Benchmark
+    public Calendar cachedClockCalendar() {
+        return cachedClock.getCalendar();
+    }
+}
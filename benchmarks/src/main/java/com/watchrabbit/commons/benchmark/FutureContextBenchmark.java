@@ -0,0 +1,88 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.benchmark;
+
+import com.watchrabbit.commons.async.FutureContext;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Throughput of registering and resolving batches of completed futures with
+ * every resolution mode of {@code FutureContext}.
+ *
+ * @author Mariusz
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FutureContextBenchmark {
+
+    @Param({"1", "16", "256"})
+    private int futures;
+
+    private CompletableFuture<Integer>[] completed;
+
+    private Consumer<Integer> consumer;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        completed = new CompletableFuture[futures];
+        for (int i = 0; i < futures; i++) {
+            completed[i] = CompletableFuture.completedFuture(i);
+        }
+        consumer = blackhole::consume;
+    }
+
+    @Benchmark
+    public void resolve() {
+        register();
+        FutureContext.resolve();
+    }
+
+    @Benchmark
+    public void resolveInCompletionOrder() {
+        register();
+        FutureContext.resolve(1, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public Object resolveAsync() {
+        register();
+        return FutureContext.resolveAsync().join();
+    }
+
+    private void register() {
+        for (CompletableFuture<Integer> future : completed) {
+            FutureContext.register(future, consumer);
+        }
+    }
+}
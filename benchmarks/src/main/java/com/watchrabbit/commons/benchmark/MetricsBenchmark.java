@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.benchmark;
+
+import com.watchrabbit.commons.metrics.Counter;
+import com.watchrabbit.commons.metrics.MetricsRegistry;
+import com.watchrabbit.commons.metrics.Timer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of recording metrics the way instrumented library code does, with
+ * registry enabled and disabled.
+ *
+ * @author Mariusz
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class MetricsBenchmark {
+
+    @Param({"true", "false"})
+    private boolean enabled;
+
+    private final MetricsRegistry metrics = MetricsRegistry.create();
+
+    private final Counter counter = metrics.counter("counter");
+
+    private final Timer timer = metrics.timer("timer");
+
+    private long duration;
+
+    @Setup
+    public void setUp() {
+        metrics.setEnabled(enabled);
+    }
+
+    @Benchmark
+    public void increment() {
+        if (metrics.isEnabled()) {
+            counter.increment();
+        }
+    }
+
+    @Benchmark
+    public void record() {
+        if (metrics.isEnabled()) {
+            timer.record(duration++ & 0xFFFFF);
+        }
+    }
+}
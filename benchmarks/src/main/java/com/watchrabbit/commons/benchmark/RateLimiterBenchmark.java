@@ -0,0 +1,66 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.benchmark;
+
+import com.watchrabbit.commons.limiter.RateLimiter;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of {@code RateLimiter.tryAcquire} when permits are granted (unlimited
+ * rate) and when they are refused (exhausted limiter), with contended state.
+ *
+ * @author Mariusz
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class RateLimiterBenchmark {
+
+    private final RateLimiter tokenBucketGranted = RateLimiter.tokenBucket(1, 1, 1, TimeUnit.NANOSECONDS);
+
+    private final RateLimiter tokenBucketRefused = RateLimiter.tokenBucket(1, 1, 1, TimeUnit.HOURS);
+
+    private final RateLimiter warmingUpGranted = RateLimiter.warmingUp(1_000_000, 1, TimeUnit.SECONDS, 1, TimeUnit.MILLISECONDS);
+
+    @Benchmark
+    public boolean tokenBucketGranted() {
+        return tokenBucketGranted.tryAcquire();
+    }
+
+    @Benchmark
+    public boolean tokenBucketRefused() {
+        return tokenBucketRefused.tryAcquire();
+    }
+
+    @Benchmark
+    public boolean warmingUpTryAcquire() {
+        return warmingUpGranted.tryAcquire();
+    }
+}
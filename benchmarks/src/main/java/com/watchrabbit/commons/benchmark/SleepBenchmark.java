@@ -0,0 +1,52 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.benchmark;
+
+import com.watchrabbit.commons.sleep.Sleep;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Wake up precision of {@code Sleep}. Sample time mode reports percentiles
+ * of time spent in 500 us sleep, precise sleep must stay within few
+ * microseconds of requested time up to high percentiles while parking
+ * sleep overshoots by scheduler latency.
+ *
+ * @author Mariusz
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SleepBenchmark {
+
+    @Benchmark
+    public void sleepPrecisely() {
+        Sleep.sleepPrecisely(500, TimeUnit.MICROSECONDS);
+    }
+
+    @Benchmark
+    public void sleep() {
+        Sleep.sleep(500, TimeUnit.MICROSECONDS);
+    }
+}
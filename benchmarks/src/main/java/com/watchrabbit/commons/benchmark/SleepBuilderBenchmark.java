@@ -0,0 +1,88 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.benchmark;
+
+import com.watchrabbit.commons.sleep.SleepBuilder;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Overhead of single poll of {@code SleepBuilder.build()}, with zero interval
+ * so only loop itself is measured. Run with GC profiler, steady state poll
+ * must report {@code gc.alloc.rate.norm} close to zero bytes per operation.
+ *
+ * @author Mariusz
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SleepBuilderBenchmark {
+
+    private static final int POLLS = 1_000;
+
+    private int remaining;
+
+    private SleepBuilder<Boolean> predicateSleeper;
+
+    private SleepBuilder<Boolean> comparerSleeper;
+
+    @Setup
+    public void setUp() {
+        predicateSleeper = SleepBuilder.<Boolean>sleep()
+                .withTimeout(1, TimeUnit.MINUTES)
+                .withInterval(0, TimeUnit.NANOSECONDS)
+                .withPredicate(argument -> argument)
+                .withStatement(() -> --remaining > 0);
+        comparerSleeper = SleepBuilder.<Boolean>sleep()
+                .withTimeout(1, TimeUnit.MINUTES)
+                .withInterval(0, TimeUnit.NANOSECONDS)
+                .withComparer(argument -> argument)
+                .withStatement(() -> --remaining > 0);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POLLS)
+    public Boolean pollWithPredicate() {
+        remaining = POLLS;
+        return predicateSleeper.build();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POLLS)
+    public Boolean pollWithComparer() {
+        remaining = POLLS;
+        return comparerSleeper.build();
+    }
+
+    @Benchmark
+    public Boolean immediateReturn() {
+        remaining = 0;
+        return predicateSleeper.build();
+    }
+}
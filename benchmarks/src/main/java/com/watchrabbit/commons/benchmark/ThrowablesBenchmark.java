@@ -0,0 +1,133 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.benchmark;
+
+import com.watchrabbit.commons.breaker.CircuitBreaker;
+import com.watchrabbit.commons.exception.SystemException;
+import com.watchrabbit.commons.exception.Throwables;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Overhead of {@code Throwables} wrappers when wrapped call succeeds (hit)
+ * and when it throws (miss).
+ *
+ * @author Mariusz
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ThrowablesBenchmark {
+
+    private final Exception failure = new Exception("failure");
+
+    private int value;
+
+    private final Predicate<Integer> propagateHit = Throwables.propagateFromPredicate(argument -> argument >= 0);
+
+    private final Predicate<Integer> propagateMiss = Throwables.propagateFromPredicate(argument -> {
+        throw failure;
+    });
+
+    private final Predicate<Integer> propagateLightweightMiss = Throwables.propagateLightweightFromPredicate(argument -> {
+        throw failure;
+    });
+
+    private final Predicate<Integer> suppressHit = Throwables.suppress(false, argument -> argument >= 0);
+
+    private final Predicate<Integer> suppressMiss = Throwables.suppress(false, argument -> {
+        throw failure;
+    });
+
+    private final Consumer<Integer> suppressConsumerMiss = Throwables.suppress(argument -> {
+        throw failure;
+    });
+
+    private final CircuitBreaker breaker = CircuitBreaker.create().withMinimumCalls(1);
+
+    private final Predicate<Integer> guardHit = Throwables.guard(CircuitBreaker.create(), false, argument -> argument >= 0);
+
+    private final Predicate<Integer> guardOpen = Throwables.guard(breaker, false, argument -> {
+        throw failure;
+    });
+
+    @Benchmark
+    public boolean baseline() {
+        return value++ >= 0;
+    }
+
+    @Benchmark
+    public boolean propagateHit() {
+        return propagateHit.test(value++);
+    }
+
+    @Benchmark
+    public Object propagateMiss() {
+        try {
+            return propagateMiss.test(value++);
+        } catch (SystemException ex) {
+            return ex;
+        }
+    }
+
+    @Benchmark
+    public Object propagateLightweightMiss() {
+        try {
+            return propagateLightweightMiss.test(value++);
+        } catch (SystemException ex) {
+            return ex;
+        }
+    }
+
+    @Benchmark
+    public boolean guardHit() {
+        return guardHit.test(value++);
+    }
+
+    @Benchmark
+    public boolean guardOpen() {
+        return guardOpen.test(value++);
+    }
+
+    @Benchmark
+    public boolean suppressHit() {
+        return suppressHit.test(value++);
+    }
+
+    @Benchmark
+    public boolean suppressMiss() {
+        return suppressMiss.test(value++);
+    }
+
+    @Benchmark
+    public int suppressConsumerMiss() {
+        suppressConsumerMiss.accept(value);
+        return value++;
+    }
+}
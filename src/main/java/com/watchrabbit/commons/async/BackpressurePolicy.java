@@ -0,0 +1,46 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.async;
+
+/**
+ * Decides what {@link FutureScope} with limited capacity does when new future
+ * is registered and capacity is exhausted.
+ *
+ * @author Mariusz
+ * @see FutureScope#withCapacity(int, BackpressurePolicy)
+ * @see FutureScope#withCapacity(int, BackpressurePolicy, long,
+ * java.util.concurrent.TimeUnit)
+ */
+public enum BackpressurePolicy {
+
+    /**
+     * Registering thread waits until other thread resolves some futures, or
+     * in streaming mode until some registered future completes. Waiting is
+     * bounded by capacity timeout of scope.
+     */
+    BLOCK,
+    /**
+     * Registering thread resolves oldest registered future inline and invokes
+     * its consumer, then registers new one. Oldest future that does not
+     * complete within capacity timeout of scope is reported as timed out.
+     */
+    RESOLVE_OLDEST,
+    /**
+     * Registration fails with
+     * {@link com.watchrabbit.commons.exception.SystemException}.
+     */
+    REJECT
+}
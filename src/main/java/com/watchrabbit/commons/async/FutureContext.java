@@ -16,34 +16,29 @@
 package com.watchrabbit.commons.async;
 
 import com.watchrabbit.commons.exception.SystemException;
-import java.util.AbstractMap;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.util.function.Supplier;
 
 /**
+ * Thread bound context of registered {@code Future}'s. When
+ * {@link FutureScope} is bound to current thread, futures are registered in
+ * and resolved from that scope.
  *
  * @author Mariusz
  */
 public class FutureContext {
 
-    private static final Logger LOGGER = LoggerFactory.getLogger(FutureContext.class);
-
-    private static final ThreadLocal<FutureContext> threadLocal = new ThreadLocal<FutureContext>() {
+    private static final ThreadLocal<FutureScope> threadLocal = new ThreadLocal<FutureScope>() {
         @Override
-        protected FutureContext initialValue() {
-            return new FutureContext();
+        protected FutureScope initialValue() {
+            return new FutureScope();
         }
     };
 
-    private final Map<Future, Map.Entry<Consumer, Long>> calls = new HashMap<>();
-
     private FutureContext() {
     }
 
@@ -58,8 +53,35 @@ public class FutureContext {
      * @param consumer {@code consumer} of object obtained from {@code future}
      */
     public static <T> void register(Future<T> future, Consumer<T> consumer) {
-        LOGGER.debug("Registering new future {} and consumer {}", future, consumer);
-        getFutureContext().add(future, consumer);
+        getFutureContext().register(future, consumer);
+    }
+
+    /**
+     * Adds new {@code CompletableFuture} and {@code Consumer} to the context
+     * of this thread. When resolved with {@link #resolveAsync()} consumer is
+     * attached as completion callback and no thread is blocked.
+     *
+     * @param <T> type of {@code future} and {@code consumer}
+     * @param future {@code future} that returns argument of type {@code <T>}
+     * used by {@code consumer}
+     * @param consumer {@code consumer} of object obtained from {@code future}
+     */
+    public static <T> void register(CompletableFuture<T> future, Consumer<T> consumer) {
+        getFutureContext().register(future, consumer);
+    }
+
+    /**
+     * Adds new {@code CompletionStage} and {@code Consumer} to the context of
+     * this thread. When resolved with {@link #resolveAsync()} consumer is
+     * attached as completion callback and no thread is blocked.
+     *
+     * @param <T> type of {@code stage} and {@code consumer}
+     * @param stage {@code stage} that returns argument of type {@code <T>}
+     * used by {@code consumer}
+     * @param consumer {@code consumer} of object obtained from {@code stage}
+     */
+    public static <T> void register(CompletionStage<T> stage, Consumer<T> consumer) {
+        getFutureContext().register(stage, consumer);
     }
 
     /**
@@ -76,8 +98,23 @@ public class FutureContext {
      * @param timeUnit the time unit of the {@code timeout} argument
      */
     public static <T> void register(Future<T> future, Consumer<T> consumer, long timeout, TimeUnit timeUnit) {
-        LOGGER.debug("Registering new future {} and consumer {} with timeout {} {}", future, consumer, timeout, timeUnit);
-        getFutureContext().add(future, consumer, timeout, timeUnit);
+        getFutureContext().register(future, consumer, timeout, timeUnit);
+    }
+
+    /**
+     * Adds hedged request and {@code Consumer} to the context of this thread.
+     * Request is started at once, when it has not completed within delay
+     * chosen by {@code hedge} backup request is started, first successful
+     * result is passed to consumer and the other request is cancelled.
+     *
+     * @param <T> type of result and {@code consumer}
+     * @param supplier starting request, invoked once or twice
+     * @param consumer {@code consumer} of first successful result
+     * @param hedge deciding when backup request is started, shared by
+     * requests to the same dependency
+     */
+    public static <T> void register(Supplier<? extends CompletableFuture<T>> supplier, Consumer<T> consumer, Hedge hedge) {
+        getFutureContext().register(supplier, consumer, hedge);
     }
 
     /**
@@ -90,45 +127,71 @@ public class FutureContext {
      */
     public static void resolve() {
         try {
-            getFutureContext().resolveAll();
-        } catch (ExecutionException | InterruptedException | TimeoutException ex) {
-            LOGGER.error("Exception during resolving", ex);
-            throw new SystemException("Error thrown during resolve", ex);
+            getFutureContext().resolve();
+        } finally {
+            release();
         }
     }
 
-    private static FutureContext getFutureContext() {
-        return threadLocal.get();
+    /**
+     * Resolves all registered {@code Future}'s to this thread in order of
+     * their completion and invokes {@code Consumer}'s as soon as result is
+     * available, so slow future does not hold up consumers of futures that
+     * are already done. Whole resolution is limited by {@code timeout},
+     * futures registered with own timeout are limited by the shorter one.
+     *
+     * <p>
+     * Failure of one future does not stop resolution of others. Every
+     * exception thrown by futures or consumers, and timeout of every
+     * unresolved future, is collected and thrown at the end as single
+     * {@link SystemException} with first failure as cause and all failures as
+     * suppressed exceptions.
+     *
+     * Regardless of success or exception every registered {@code future} and
+     * {@code consumer} are removed from context.
+     *
+     * @param timeout the maximum time to wait for all futures
+     * @param timeUnit the time unit of the {@code timeout} argument
+     */
+    public static void resolve(long timeout, TimeUnit timeUnit) {
+        try {
+            getFutureContext().resolve(timeout, timeUnit);
+        } finally {
+            release();
+        }
     }
 
-    private <T> void add(Future<T> future, Consumer<T> consumer) {
-        this.calls.put(future, new AbstractMap.SimpleEntry<>(consumer, null));
+    /**
+     * Resolves all registered {@code Future}'s to this thread without
+     * blocking. Consumers are attached as completion callbacks and invoked on
+     * threads completing futures, plain {@code Future}'s and futures
+     * registered with timeout are watched on shared
+     * {@link com.watchrabbit.commons.sleep.SleepPoller}.
+     *
+     * <p>
+     * Every registered {@code future} and {@code consumer} are removed from
+     * context at once. Returned future completes when all consumers are
+     * invoked, or exceptionally with {@link SystemException} collecting every
+     * failure like {@link #resolve(long, TimeUnit)}.
+     *
+     * @return future completed when all registered work is done
+     */
+    public static CompletableFuture<Void> resolveAsync() {
+        try {
+            return getFutureContext().resolveAsync();
+        } finally {
+            release();
+        }
     }
 
-    private <T> void add(Future<T> future, Consumer<T> consumer, long timeout, TimeUnit timeUnit) {
-        this.calls.put(future, new AbstractMap.SimpleEntry<>(consumer, timeUnit.toMillis(timeout)));
+    private static FutureScope getFutureContext() {
+        FutureScope scope = FutureScope.current();
+        return scope == null ? threadLocal.get() : scope;
     }
 
-    private void resolveAll() throws InterruptedException, ExecutionException, TimeoutException {
-        try {
-            for (Future future : calls.keySet()) {
-                LOGGER.debug("Resolving future {}", future);
-                Map.Entry<Consumer, Long> value = calls.get(future);
-                Object result;
-                if (value.getValue() == null) {
-                    LOGGER.debug("Future {} registered without timeout, retrieving the result", future);
-                    result = future.get();
-                } else {
-                    LOGGER.debug("Future {} registered with timeout, retrieving the result with timeout {} MILISECONDS", future, value.getValue());
-                    result = future.get(value.getValue(), TimeUnit.MILLISECONDS);
-                }
-                LOGGER.debug("Invoking consumer of result {}", result);
-                value.getKey().accept(result);
-
-            }
-        } finally {
-            LOGGER.debug("Clearing registered calls");
-            calls.clear();
+    private static void release() {
+        if (FutureScope.current() == null) {
+            threadLocal.remove();
         }
     }
 }
@@ -0,0 +1,885 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.async;
+
+import com.watchrabbit.commons.clock.Clock;
+import com.watchrabbit.commons.clock.Clocks;
+import com.watchrabbit.commons.exception.SystemException;
+import com.watchrabbit.commons.metrics.Counter;
+import com.watchrabbit.commons.metrics.MetricsRegistry;
+import com.watchrabbit.commons.metrics.Timer;
+import com.watchrabbit.commons.sleep.BackoffStrategy;
+import com.watchrabbit.commons.sleep.Sleep;
+import com.watchrabbit.commons.sleep.SleepBuilder;
+import com.watchrabbit.commons.sleep.SleepSignal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Explicit context of registered {@code Future}'s and their {@code Consumer}'s.
+ * Unlike thread bound {@link FutureContext} scope can be passed between
+ * threads, and many producer threads can register futures concurrently.
+ *
+ * <p>
+ * Scope opened with {@link #open()} is bound to current thread, so
+ * {@code FutureContext} registers futures in it. Tasks wrapped with
+ * {@link #wrap(Runnable)} or {@link #wrap(Callable)} are bound to the scope on
+ * any thread they are run, which allows to fan out work across thread pools
+ * and still resolve it in one place:
+ *
+ * <pre>
+ * try (FutureScope scope = FutureScope.open()) {
+ *     executor.submit(scope.wrap(() -&gt; FutureContext.register(future, consumer)));
+ *     ...
+ *     scope.resolve(5, TimeUnit.SECONDS);
+ * }
+ * </pre>
+ *
+ * Closing scope with unresolved futures is reported by exception, and
+ * unresolved futures are dropped so they can not leak.
+ *
+ * <p>
+ * Scope is unbounded by default, so every registered future, its consumer
+ * and result stay reachable until resolve. Large fan outs should limit
+ * capacity with {@link #withCapacity(int, BackpressurePolicy)} and enable
+ * {@link #withStreaming()}, which resolves finished futures while
+ * registration continues, so memory stays flat regardless of number of
+ * registered futures:
+ *
+ * <pre>
+ * try (FutureScope scope = FutureScope.open()
+ *         .withCapacity(1000, BackpressurePolicy.BLOCK)
+ *         .withStreaming()) {
+ *     for (Request request : requests) {
+ *         FutureContext.register(client.send(request), consumer);
+ *     }
+ *     scope.resolve(5, TimeUnit.SECONDS);
+ * }
+ * </pre>
+ *
+ * Failures of futures resolved during registration are collected and thrown
+ * by next resolve of this scope.
+ *
+ * @author Mariusz
+ */
+public class FutureScope implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FutureScope.class);
+
+    private static final ThreadLocal<FutureScope> CURRENT = new ThreadLocal<>();
+
+    private static final MetricsRegistry METRICS = MetricsRegistry.getDefault();
+
+    private static final Counter RESOLVED = METRICS.counter("future.resolved");
+
+    private static final Counter FAILED = METRICS.counter("future.failed");
+
+    private static final Counter TIMEOUTS = METRICS.counter("future.timeouts");
+
+    private static final Timer RESOLVE = METRICS.timer("future.resolve");
+
+    private static final int STREAMING_BATCH = 64;
+
+    private static final long DEFAULT_CAPACITY_TIMEOUT = TimeUnit.MINUTES.toNanos(1);
+
+    private final Queue<Call> calls = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+
+    private volatile Semaphore permits;
+
+    private volatile BackpressurePolicy policy;
+
+    private volatile long capacityTimeout = DEFAULT_CAPACITY_TIMEOUT;
+
+    private volatile boolean streaming;
+
+    private volatile int streamingThreshold = STREAMING_BATCH;
+
+    private volatile Clock clock = Clocks.getDefault();
+
+    private final FutureScope previous;
+
+    private final Thread owner;
+
+    FutureScope() {
+        this(null, null);
+    }
+
+    private FutureScope(FutureScope previous, Thread owner) {
+        this.previous = previous;
+        this.owner = owner;
+    }
+
+    /**
+     * Opens new scope and binds it to current thread until scope is closed.
+     *
+     * @return opened {@code FutureScope}
+     */
+    public static FutureScope open() {
+        FutureScope scope = new FutureScope(CURRENT.get(), Thread.currentThread());
+        scope.bind();
+        return scope;
+    }
+
+    /**
+     * Returns scope bound to current thread, or {@code null} if no scope is
+     * bound.
+     *
+     * @return current {@code FutureScope}
+     */
+    public static FutureScope current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Limits number of unresolved futures held by this scope. When capacity
+     * is exhausted registration behaves according to {@code policy} and
+     * waits for capacity at most one minute. Scope should be configured
+     * before it is shared with other threads.
+     *
+     * @param capacity maximum number of unresolved futures
+     * @param policy behavior of registration when capacity is exhausted
+     * @return this scope
+     */
+    public FutureScope withCapacity(int capacity, BackpressurePolicy policy) {
+        return withCapacity(capacity, policy, DEFAULT_CAPACITY_TIMEOUT, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Limits number of unresolved futures held by this scope. When capacity
+     * is exhausted registration behaves according to {@code policy}, but
+     * never waits for capacity longer than {@code timeout}. Blocked
+     * registration fails with {@link SystemException} after timeout, oldest
+     * future resolved inline which does not complete in time is reported as
+     * failed with {@code TimeoutException} on next resolve. Scope should be
+     * configured before it is shared with other threads.
+     *
+     * @param capacity maximum number of unresolved futures
+     * @param policy behavior of registration when capacity is exhausted
+     * @param timeout maximum time spent waiting for capacity
+     * @param timeUnit of passed timeout
+     * @return this scope
+     */
+    public FutureScope withCapacity(int capacity, BackpressurePolicy policy, long timeout, TimeUnit timeUnit) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive, got " + capacity);
+        }
+        this.policy = policy;
+        this.capacityTimeout = timeUnit.toNanos(timeout);
+        this.permits = new Semaphore(capacity - size.get());
+        return this;
+    }
+
+    /**
+     * Clock used to measure timeouts of {@link #resolve(long, TimeUnit)} and
+     * {@link #resolveAsync()}, and of futures registered with timeout.
+     * {@link #resolve()} waits for futures with {@code Future.get}, so it
+     * always uses system time.
+     *
+     * @param clock source of monotonic time
+     * @return this scope
+     */
+    public FutureScope withClock(Clock clock) {
+        this.clock = clock;
+        return this;
+    }
+
+    /**
+     * Enables streaming mode, in which registering threads resolve futures
+     * that are already done and invoke their consumers. Scope is drained
+     * whenever number of unresolved futures doubles, or capacity is
+     * exhausted, so cost of draining is amortized over registrations.
+     *
+     * @return this scope
+     */
+    public FutureScope withStreaming() {
+        this.streaming = true;
+        return this;
+    }
+
+    /**
+     * Wraps task, so it is bound to this scope on thread that runs it.
+     *
+     * @param task to bind with this scope
+     * @return task bound to this scope
+     */
+    public Runnable wrap(Runnable task) {
+        return () -> {
+            FutureScope current = CURRENT.get();
+            bind();
+            try {
+                task.run();
+            } finally {
+                restore(current);
+            }
+        };
+    }
+
+    /**
+     * Wraps task, so it is bound to this scope on thread that runs it.
+     *
+     * @param <T> type of result of task
+     * @param task to bind with this scope
+     * @return task bound to this scope
+     */
+    public <T> Callable<T> wrap(Callable<T> task) {
+        return () -> {
+            FutureScope current = CURRENT.get();
+            bind();
+            try {
+                return task.call();
+            } finally {
+                restore(current);
+            }
+        };
+    }
+
+    /**
+     * Adds new {@code Future} and {@code Consumer} to this scope.
+     *
+     * @param <T> type of {@code future} and {@code consumer}
+     * @param future {@code future} that returns argument of type {@code <T>}
+     * used by {@code consumer}
+     * @param consumer {@code consumer} of object obtained from {@code future}
+     * @see FutureContext#register(Future, Consumer)
+     */
+    public <T> void register(Future<T> future, Consumer<T> consumer) {
+        LOGGER.debug("Registering new future {} and consumer {}", future, consumer);
+        add(future, consumer);
+    }
+
+    /**
+     * Adds new {@code CompletableFuture} and {@code Consumer} to this scope.
+     *
+     * @param <T> type of {@code future} and {@code consumer}
+     * @param future {@code future} that returns argument of type {@code <T>}
+     * used by {@code consumer}
+     * @param consumer {@code consumer} of object obtained from {@code future}
+     * @see FutureContext#register(CompletableFuture, Consumer)
+     */
+    public <T> void register(CompletableFuture<T> future, Consumer<T> consumer) {
+        LOGGER.debug("Registering new future {} and consumer {}", future, consumer);
+        add(future, consumer);
+    }
+
+    /**
+     * Adds new {@code CompletionStage} and {@code Consumer} to this scope.
+     *
+     * @param <T> type of {@code stage} and {@code consumer}
+     * @param stage {@code stage} that returns argument of type {@code <T>}
+     * used by {@code consumer}
+     * @param consumer {@code consumer} of object obtained from {@code stage}
+     * @see FutureContext#register(CompletionStage, Consumer)
+     */
+    public <T> void register(CompletionStage<T> stage, Consumer<T> consumer) {
+        LOGGER.debug("Registering new stage {} and consumer {}", stage, consumer);
+        CompletableFuture<T> future = new CompletableFuture<>();
+        stage.whenComplete((result, ex) -> {
+            if (ex == null) {
+                future.complete(result);
+            } else {
+                future.completeExceptionally(ex);
+            }
+        });
+        add(future, consumer);
+    }
+
+    /**
+     * Adds new {@code Future} and {@code Consumer} to this scope, with
+     * maximum {@code timeout} used when obtaining object from {@code future}.
+     *
+     * @param <T> type of {@code future} and {@code consumer}
+     * @param future {@code future} that returns argument of type {@code <T>}
+     * used by {@code consumer}
+     * @param consumer {@code consumer} of object obtained from {@code future}
+     * @param timeout the maximum time to wait
+     * @param timeUnit the time unit of the {@code timeout} argument
+     * @see FutureContext#register(Future, Consumer, long, TimeUnit)
+     */
+    public <T> void register(Future<T> future, Consumer<T> consumer, long timeout, TimeUnit timeUnit) {
+        LOGGER.debug("Registering new future {} and consumer {} with timeout {} {}", future, consumer, timeout, timeUnit);
+        add(future, consumer, timeout, timeUnit);
+    }
+
+    /**
+     * Adds hedged request and {@code Consumer} to this scope. Request is
+     * started at once, backup request is started by {@code hedge} if first
+     * one is slow and consumer receives first successful result.
+     *
+     * @param <T> type of result and {@code consumer}
+     * @param supplier starting request, invoked once or twice
+     * @param consumer {@code consumer} of first successful result
+     * @param hedge deciding when backup request is started
+     * @see FutureContext#register(Supplier, Consumer, Hedge)
+     */
+    public <T> void register(Supplier<? extends CompletableFuture<T>> supplier, Consumer<T> consumer, Hedge hedge) {
+        LOGGER.debug("Registering new hedged request {} and consumer {}", supplier, consumer);
+        add(hedge.call(supplier), consumer);
+    }
+
+    /**
+     * Resolves all futures registered in this scope one by one.
+     *
+     * @see FutureContext#resolve()
+     */
+    public void resolve() {
+        boolean measured = METRICS.isEnabled();
+        long startedAt = clock.nanoTime();
+        try {
+            resolveAll();
+        } catch (ExecutionException | InterruptedException | TimeoutException ex) {
+            LOGGER.error("Exception during resolving", ex);
+            countFailure(ex);
+            SystemException exception = new SystemException("Error thrown during resolve", ex);
+            drainFailures().forEach(exception::addSuppressed);
+            throw exception;
+        } finally {
+            record(measured, startedAt);
+        }
+        List<Throwable> failed = drainFailures();
+        if (!failed.isEmpty()) {
+            throw aggregate(failed);
+        }
+    }
+
+    /**
+     * Resolves all futures registered in this scope in order of their
+     * completion.
+     *
+     * @param timeout the maximum time to wait for all futures
+     * @param timeUnit the time unit of the {@code timeout} argument
+     * @see FutureContext#resolve(long, TimeUnit)
+     */
+    public void resolve(long timeout, TimeUnit timeUnit) {
+        boolean measured = METRICS.isEnabled();
+        long startedAt = clock.nanoTime();
+        try {
+            resolveInCompletionOrder(timeUnit.toNanos(timeout));
+        } finally {
+            record(measured, startedAt);
+        }
+    }
+
+    /**
+     * Resolves all futures registered in this scope without blocking.
+     *
+     * @return future completed when all registered work is done
+     * @see FutureContext#resolveAsync()
+     */
+    public CompletableFuture<Void> resolveAsync() {
+        boolean measured = METRICS.isEnabled();
+        long startedAt = clock.nanoTime();
+        CompletableFuture<Void> resolved = resolveAllAsync();
+        if (measured) {
+            resolved.whenComplete((result, ex) -> record(true, startedAt));
+        }
+        return resolved;
+    }
+
+    /**
+     * Resolves registered futures that are already done and invokes their
+     * consumers, without waiting for others. Failures are collected and
+     * thrown by next resolve of this scope.
+     *
+     * @return number of resolved futures
+     */
+    public int resolveCompleted() {
+        int resolved = 0;
+        for (Iterator<Call> iterator = calls.iterator(); iterator.hasNext();) {
+            Call call = iterator.next();
+            if (call.future.isDone() && claim(call)) {
+                iterator.remove();
+                resolveInline(call, 0);
+                release(1);
+                resolved++;
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * Returns number of registered and not resolved futures.
+     *
+     * @return number of unresolved futures
+     */
+    public int getUnresolved() {
+        return size.get();
+    }
+
+    /**
+     * Unbinds scope from thread that opened it. If scope still holds
+     * unresolved futures they are dropped and {@link SystemException} is
+     * thrown.
+     */
+    @Override
+    public void close() {
+        if (owner == Thread.currentThread() && CURRENT.get() == this) {
+            restore(previous);
+        }
+        int unresolved = drain().size();
+        release(unresolved);
+        List<Throwable> failed = drainFailures();
+        if (unresolved > 0) {
+            LOGGER.error("Closing scope with {} unresolved futures", unresolved);
+            SystemException exception = new SystemException("Scope closed with " + unresolved + " unresolved futures");
+            failed.forEach(exception::addSuppressed);
+            throw exception;
+        }
+        if (!failed.isEmpty()) {
+            throw aggregate(failed);
+        }
+    }
+
+    private List<Call> drain() {
+        List<Call> drained = new ArrayList<>();
+        int limit = size.get();
+        while (drained.size() < limit) {
+            Call call = poll();
+            if (call == null) {
+                break;
+            }
+            drained.add(call);
+        }
+        return drained;
+    }
+
+    private Call poll() {
+        for (Call call = calls.poll(); call != null; call = calls.poll()) {
+            if (claim(call)) {
+                return call;
+            }
+        }
+        return null;
+    }
+
+    private boolean claim(Call call) {
+        if (!call.claim()) {
+            return false;
+        }
+        size.decrementAndGet();
+        return true;
+    }
+
+    private void release(int resolved) {
+        Semaphore permits = this.permits;
+        if (permits != null && resolved > 0) {
+            permits.release(resolved);
+        }
+    }
+
+    private List<Throwable> drainFailures() {
+        List<Throwable> drained = new ArrayList<>();
+        for (Throwable failure = failures.poll(); failure != null; failure = failures.poll()) {
+            drained.add(failure);
+        }
+        return drained;
+    }
+
+    private static void fail(Collection<Throwable> failures, Throwable failure) {
+        failures.add(failure);
+        countFailure(failure);
+    }
+
+    private static void countFailure(Throwable failure) {
+        if (METRICS.isEnabled()) {
+            if (failure instanceof TimeoutException) {
+                TIMEOUTS.increment();
+            } else {
+                FAILED.increment();
+            }
+        }
+    }
+
+    private static void resolved() {
+        if (METRICS.isEnabled()) {
+            RESOLVED.increment();
+        }
+    }
+
+    private void record(boolean measured, long startedAt) {
+        if (measured) {
+            RESOLVE.record(clock.nanoTime() - startedAt);
+        }
+    }
+
+    private void bind() {
+        CURRENT.set(this);
+    }
+
+    private static void restore(FutureScope previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    private <T> void add(Future<T> future, Consumer<T> consumer) {
+        add(new Call(future, consumer, null));
+    }
+
+    private <T> void add(Future<T> future, Consumer<T> consumer, long timeout, TimeUnit timeUnit) {
+        add(new Call(future, consumer, timeUnit.toMillis(timeout)));
+    }
+
+    private void add(Call call) {
+        Semaphore permits = this.permits;
+        if (permits != null) {
+            acquire(permits);
+        }
+        calls.add(call);
+        int registered = size.incrementAndGet();
+        if (streaming && registered >= streamingThreshold) {
+            resolveCompleted();
+            streamingThreshold = Math.max(STREAMING_BATCH, size.get() * 2);
+        }
+    }
+
+    private void acquire(Semaphore permits) {
+        if (permits.tryAcquire()) {
+            return;
+        }
+        if (streaming) {
+            resolveCompleted();
+            if (permits.tryAcquire()) {
+                return;
+            }
+        }
+        switch (policy) {
+            case REJECT:
+                LOGGER.debug("Rejecting registration, scope capacity exhausted");
+                throw new SystemException("Scope capacity exhausted, " + size.get() + " unresolved futures");
+            case RESOLVE_OLDEST:
+                awaitCapacity(permits, true);
+                return;
+            default:
+                awaitCapacity(permits, false);
+        }
+    }
+
+    private void awaitCapacity(Semaphore permits, boolean resolveOldest) {
+        LOGGER.debug("Scope capacity exhausted, waiting for resolve");
+        long deadline = clock.nanoTime() + capacityTimeout;
+        int attempt = 1;
+        long interval = 0;
+        try {
+            while (!permits.tryAcquire(interval, TimeUnit.NANOSECONDS)) {
+                if (streaming && resolveCompleted() > 0 && permits.tryAcquire()) {
+                    return;
+                }
+                long remaining = deadline - clock.nanoTime();
+                Call oldest = resolveOldest ? poll() : null;
+                if (oldest != null) {
+                    LOGGER.debug("Scope capacity exhausted, resolving oldest future {}", oldest.future);
+                    resolveInline(oldest, Math.max(0, remaining));
+                    release(1);
+                    attempt = 1;
+                    interval = 0;
+                } else if (remaining <= 0) {
+                    throw new SystemException("Scope capacity exhausted, " + size.get() + " unresolved futures");
+                } else {
+                    interval = Math.min(remaining, Sleep.DEFAULT_BACKOFF.nextInterval(attempt++, interval));
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SystemException("Interrupted while waiting for scope capacity", ex);
+        }
+    }
+
+    private void resolveInline(Call call, long maxWaitNanos) {
+        try {
+            long wait = call.timeout == null ? maxWaitNanos
+                    : Math.min(maxWaitNanos, TimeUnit.MILLISECONDS.toNanos(call.timeout));
+            Object result = call.future.get(wait, TimeUnit.NANOSECONDS);
+            LOGGER.debug("Invoking consumer of result {}", result);
+            call.consumer.accept(result);
+            resolved();
+        } catch (ExecutionException ex) {
+            LOGGER.error("Future " + call.future + " failed", ex.getCause());
+            fail(failures, ex.getCause());
+        } catch (TimeoutException ex) {
+            LOGGER.error("Future " + call.future + " timed out", ex);
+            fail(failures, ex);
+        } catch (InterruptedException ex) {
+            LOGGER.error("Interrupted during resolving", ex);
+            Thread.currentThread().interrupt();
+            fail(failures, ex);
+        } catch (RuntimeException ex) {
+            LOGGER.error("Consumer of future " + call.future + " failed", ex);
+            fail(failures, ex);
+        }
+    }
+
+    private void resolveAll() throws InterruptedException, ExecutionException, TimeoutException {
+        List<Call> calls = drain();
+        try {
+            for (Call call : calls) {
+                Future future = call.future;
+                LOGGER.debug("Resolving future {}", future);
+                Object result;
+                if (call.timeout == null) {
+                    LOGGER.debug("Future {} registered without timeout, retrieving the result", future);
+                    result = future.get();
+                } else {
+                    LOGGER.debug("Future {} registered with timeout, retrieving the result with timeout {} MILISECONDS", future, call.timeout);
+                    result = future.get(call.timeout, TimeUnit.MILLISECONDS);
+                }
+                LOGGER.debug("Invoking consumer of result {}", result);
+                call.consumer.accept(result);
+                resolved();
+
+            }
+        } finally {
+            LOGGER.debug("Clearing registered calls");
+            release(calls.size());
+            calls.clear();
+        }
+    }
+
+    private void resolveInCompletionOrder(long timeout) {
+        List<Call> calls = drain();
+        Clock clock = this.clock;
+        long start = clock.nanoTime();
+        long deadline = start + timeout;
+        Thread resolver = Thread.currentThread();
+        Queue<Call> completed = new ConcurrentLinkedQueue<>();
+        Map<Call, Long> pending = new HashMap<>();
+        List<Future> watchers = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        try {
+            for (Call call : calls) {
+                long futureDeadline = call.timeout == null ? deadline
+                        : Math.min(deadline, start + TimeUnit.MILLISECONDS.toNanos(call.timeout));
+                pending.put(call, futureDeadline);
+                watchers.add(watch(call, futureDeadline - start, completed, resolver));
+            }
+            while (!pending.isEmpty()) {
+                long nearest = expire(pending, clock.nanoTime(), failures);
+                if (pending.isEmpty()) {
+                    break;
+                }
+                Call call = completed.poll();
+                if (call == null) {
+                    clock.parkUntil(this, nearest);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                } else if (pending.remove(call) != null) {
+                    consume(call.future, call.consumer, failures);
+                }
+            }
+        } catch (InterruptedException ex) {
+            LOGGER.error("Interrupted during resolving", ex);
+            Thread.currentThread().interrupt();
+            fail(failures, ex);
+        } finally {
+            LOGGER.debug("Clearing registered calls");
+            watchers.forEach(watcher -> watcher.cancel(false));
+            release(calls.size());
+            calls.clear();
+        }
+        failures.addAll(drainFailures());
+        if (!failures.isEmpty()) {
+            throw aggregate(failures);
+        }
+    }
+
+    private CompletableFuture<Void> resolveAllAsync() {
+        List<Call> calls = drain();
+        List<Throwable> failures = Collections.synchronizedList(drainFailures());
+        List<CompletableFuture<?>> stages = new ArrayList<>();
+        try {
+            for (Call call : calls) {
+                Future future = call.future;
+                Consumer consumer = call.consumer;
+                stages.add(toCompletable(future, call.timeout).handle((result, ex) -> {
+                    release(1);
+                    if (ex != null) {
+                        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                        LOGGER.error("Future " + future + " failed", cause);
+                        fail(failures, cause);
+                        return null;
+                    }
+                    try {
+                        LOGGER.debug("Invoking consumer of result {}", result);
+                        consumer.accept(result);
+                        resolved();
+                    } catch (RuntimeException consumerException) {
+                        LOGGER.error("Consumer of future " + future + " failed", consumerException);
+                        fail(failures, consumerException);
+                    }
+                    return null;
+                }));
+            }
+        } finally {
+            LOGGER.debug("Clearing registered calls");
+            release(calls.size() - stages.size());
+            calls.clear();
+        }
+        return CompletableFuture.allOf(stages.toArray(new CompletableFuture[stages.size()]))
+                .thenRun(() -> {
+                    if (!failures.isEmpty()) {
+                        throw aggregate(failures);
+                    }
+                });
+    }
+
+    private CompletableFuture<Object> toCompletable(Future future, Long timeout) {
+        if (timeout == null && future instanceof CompletableFuture) {
+            return (CompletableFuture<Object>) future;
+        }
+        long timeoutNanos = timeout == null ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(timeout);
+        SleepBuilder<Boolean> watcher = SleepBuilder.<Boolean>sleep()
+                .withName("future-watcher")
+                .withClock(clock)
+                .withTimeout(timeoutNanos, TimeUnit.NANOSECONDS)
+                .withBackoff(Sleep.DEFAULT_BACKOFF)
+                .withPredicate(done -> !done)
+                .withStatement(future::isDone);
+        if (future instanceof CompletableFuture) {
+            SleepSignal signal = SleepSignal.create();
+            ((CompletableFuture<?>) future).whenComplete((result, ex) -> signal.signal());
+            watcher.withSignal(signal)
+                    .withBackoff(BackoffStrategy.fixed(timeoutNanos, TimeUnit.NANOSECONDS));
+        }
+        return watcher.buildAsync().thenApply(done -> {
+            if (!done) {
+                throw new CompletionException(new TimeoutException("Future " + future + " timed out"));
+            }
+            try {
+                return future.get();
+            } catch (ExecutionException ex) {
+                throw new CompletionException(ex.getCause());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(ex);
+            }
+        });
+    }
+
+    private SystemException aggregate(List<Throwable> failures) {
+        SystemException exception = new SystemException(failures.size() + " of registered futures failed during resolve", failures.get(0));
+        failures.stream().skip(1).forEach(exception::addSuppressed);
+        return exception;
+    }
+
+    private Future watch(Call call, long timeout, Queue<Call> completed, Thread resolver) {
+        Future future = call.future;
+        if (future instanceof CompletableFuture) {
+            ((CompletableFuture<?>) future).whenComplete((result, ex) -> {
+                completed.add(call);
+                LockSupport.unpark(resolver);
+            });
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Boolean> watcher = SleepBuilder.<Boolean>sleep()
+                .withName("future-watcher")
+                .withClock(clock)
+                .withTimeout(timeout, TimeUnit.NANOSECONDS)
+                .withBackoff(Sleep.DEFAULT_BACKOFF)
+                .withPredicate(done -> !done)
+                .withStatement(future::isDone)
+                .buildAsync();
+        watcher.thenAccept(done -> {
+            if (done) {
+                completed.add(call);
+                LockSupport.unpark(resolver);
+            }
+        });
+        return watcher;
+    }
+
+    private long expire(Map<Call, Long> pending, long now, Collection<Throwable> failures) {
+        long nearest = Long.MAX_VALUE;
+        for (Iterator<Map.Entry<Call, Long>> iterator = pending.entrySet().iterator(); iterator.hasNext();) {
+            Map.Entry<Call, Long> entry = iterator.next();
+            if (entry.getValue() - now <= 0) {
+                LOGGER.debug("Future {} timed out", entry.getKey().future);
+                fail(failures, new TimeoutException("Future " + entry.getKey().future + " timed out"));
+                iterator.remove();
+            } else if (nearest == Long.MAX_VALUE || entry.getValue() - nearest < 0) {
+                nearest = entry.getValue();
+            }
+        }
+        return nearest;
+    }
+
+    private void consume(Future future, Consumer consumer, List<Throwable> failures) throws InterruptedException {
+        LOGGER.debug("Resolving future {}", future);
+        try {
+            Object result = future.get();
+            LOGGER.debug("Invoking consumer of result {}", result);
+            consumer.accept(result);
+            resolved();
+        } catch (ExecutionException ex) {
+            LOGGER.error("Future " + future + " failed", ex.getCause());
+            fail(failures, ex.getCause());
+        } catch (RuntimeException ex) {
+            LOGGER.error("Consumer of future " + future + " failed", ex);
+            fail(failures, ex);
+        }
+    }
+
+    private static final class Call {
+
+        private static final AtomicIntegerFieldUpdater<Call> CLAIMED = AtomicIntegerFieldUpdater.newUpdater(Call.class, "claimed");
+
+        private final Future future;
+
+        private final Consumer consumer;
+
+        private final Long timeout;
+
+        private volatile int claimed;
+
+        private Call(Future future, Consumer consumer, Long timeout) {
+            this.future = future;
+            this.consumer = consumer;
+            this.timeout = timeout;
+        }
+
+        private boolean claim() {
+            return CLAIMED.compareAndSet(this, 0, 1);
+        }
+    }
+}
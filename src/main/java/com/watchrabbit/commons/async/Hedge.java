@@ -0,0 +1,317 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.async;
+
+import com.watchrabbit.commons.clock.Clock;
+import com.watchrabbit.commons.clock.Clocks;
+import com.watchrabbit.commons.clock.Histogram;
+import com.watchrabbit.commons.metrics.Counter;
+import com.watchrabbit.commons.metrics.MetricsRegistry;
+import com.watchrabbit.commons.retry.RetryBudget;
+import com.watchrabbit.commons.sleep.SleepPoller;
+import com.watchrabbit.commons.sleep.TimerWheel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hedged requests: when first request has not completed within delay, backup
+ * request is started and the first successful result wins, the other request
+ * is cancelled. Delay is percentile of recently observed latencies, so only
+ * the slowest requests are hedged, and extra load is capped by
+ * {@link RetryBudget}. Latency is measured from start of first request, also
+ * when backup request wins, so hedging does not hide slow requests from
+ * observed percentile. When first request fails before delay, backup request
+ * is started at once, if budget allows, otherwise the failure is returned.
+ *
+ * <p>
+ * Configured {@code Hedge} is thread safe and should be shared by all
+ * requests to the same dependency.
+ *
+ * @author Mariusz
+ */
+public final class Hedge {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Hedge.class);
+
+    private static final MetricsRegistry METRICS = MetricsRegistry.getDefault();
+
+    private static final int SAMPLES_PER_UPDATE = 100;
+
+    private static final int SAMPLES_PER_WINDOW = 10_000;
+
+    private final Histogram latencies = Histogram.create();
+
+    private final AtomicLong samples = new AtomicLong();
+
+    private double percentile = 95;
+
+    private volatile long delayNanos = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private RetryBudget budget = RetryBudget.create(0.05);
+
+    private boolean defaultBudget = true;
+
+    private SleepPoller poller = SleepPoller.getDefault();
+
+    private Clock clock = Clocks.getDefault();
+
+    private String name = "hedge";
+
+    private String metricPrefix = "hedge.";
+
+    private Counter hedges;
+
+    private Counter wins;
+
+    private Hedge() {
+    }
+
+    /**
+     * Creates {@code Hedge} that starts backup requests after 95th
+     * percentile of latency, for at most five percent of requests.
+     *
+     * @return new {@code Hedge}
+     */
+    public static Hedge create() {
+        return new Hedge();
+    }
+
+    /**
+     * Percentile of latencies used as delay of backup request.
+     *
+     * @param percentile between {@code 0} and {@code 100}
+     * @return {@code Hedge} with percentile
+     */
+    public Hedge withPercentile(double percentile) {
+        this.percentile = percentile;
+        return this;
+    }
+
+    /**
+     * Delay of backup request used until enough latencies are observed.
+     *
+     * @param delay of backup request
+     * @param timeUnit of passed delay
+     * @return {@code Hedge} with initial delay
+     */
+    public Hedge withInitialDelay(long delay, TimeUnit timeUnit) {
+        this.delayNanos = timeUnit.toNanos(delay);
+        return this;
+    }
+
+    /**
+     * Budget limiting backup requests to a ratio of requests.
+     *
+     * @param budget of backup requests
+     * @return {@code Hedge} with budget
+     */
+    public Hedge withBudget(RetryBudget budget) {
+        this.budget = budget;
+        this.defaultBudget = false;
+        return this;
+    }
+
+    /**
+     * Poller which timer starts backup requests.
+     *
+     * @param poller starting backup requests
+     * @return {@code Hedge} with poller
+     */
+    public Hedge withPoller(SleepPoller poller) {
+        this.poller = poller;
+        return this;
+    }
+
+    /**
+     * Clock used to measure latencies and delay of backup requests, also by
+     * default budget.
+     *
+     * @param clock source of monotonic time
+     * @return {@code Hedge} with clock
+     */
+    public Hedge withClock(Clock clock) {
+        this.clock = clock;
+        if (defaultBudget) {
+            this.budget = RetryBudget.create(0.05).withClock(clock);
+        }
+        return this;
+    }
+
+    /**
+     * Name used in logs and in names of metrics: {@code hedge.<name>.hedges}
+     * and {@code hedge.<name>.wins}. Unnamed {@code Hedge} records
+     * {@code hedge.hedges} and {@code hedge.wins}. Meters are registered when
+     * first value is recorded.
+     *
+     * @param name name of hedged dependency
+     * @return {@code Hedge} with name
+     */
+    public Hedge withName(String name) {
+        this.name = name;
+        this.metricPrefix = "hedge." + name + ".";
+        this.hedges = null;
+        this.wins = null;
+        return this;
+    }
+
+    /**
+     * Starts request and backup request if first one is slow.
+     *
+     * @param <T> type of result
+     * @param supplier starting request, invoked once or twice
+     * @return future completed with first successful result, or
+     * exceptionally when every started request failed. Cancelling it cancels
+     * requests
+     */
+    public <T> CompletableFuture<T> call(Supplier<? extends CompletableFuture<T>> supplier) {
+        HedgedCall<T> call = new HedgedCall<>(supplier);
+        call.start();
+        return call.result;
+    }
+
+    /**
+     * Returns current delay of backup requests.
+     *
+     * @param timeUnit of returned delay
+     * @return delay of backup requests
+     */
+    public long getDelay(TimeUnit timeUnit) {
+        return timeUnit.convert(delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void record(long latency) {
+        latencies.record(latency);
+        long count = samples.incrementAndGet();
+        if (count % SAMPLES_PER_UPDATE == 0) {
+            delayNanos = latencies.snapshot().getValueAtPercentile(percentile);
+            if (count % SAMPLES_PER_WINDOW == 0) {
+                latencies.reset();
+            }
+        }
+    }
+
+    private final class HedgedCall<T> implements Runnable {
+
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        private final AtomicInteger pending = new AtomicInteger(1);
+
+        private final AtomicBoolean backupStarted = new AtomicBoolean();
+
+        private final Supplier<? extends CompletableFuture<T>> supplier;
+
+        private volatile CompletableFuture<T> primary;
+
+        private volatile CompletableFuture<T> backup;
+
+        private volatile TimerWheel.Timeout timeout;
+
+        private long startedAt;
+
+        private HedgedCall(Supplier<? extends CompletableFuture<T>> supplier) {
+            this.supplier = supplier;
+        }
+
+        private void start() {
+            budget.onCall();
+            startedAt = clock.nanoTime();
+            primary = attempt(false);
+            if (result.isDone()) {
+                return;
+            }
+            if (!backupStarted.get()) {
+                timeout = poller.schedule(this, delayNanos, TimeUnit.NANOSECONDS, clock);
+            }
+            result.whenComplete((value, ex) -> {
+                if (timeout != null) {
+                    timeout.cancel();
+                }
+                cancel(primary);
+                cancel(backup);
+            });
+        }
+
+        @Override
+        public void run() {
+            if (!result.isDone() && backupStarted.compareAndSet(false, true)) {
+                startBackup();
+            }
+        }
+
+        private void startBackup() {
+            if (!budget.tryRetry()) {
+                LOGGER.debug("Budget of {} exhausted, request is not hedged", name);
+                return;
+            }
+            if (METRICS.isEnabled()) {
+                if (hedges == null) {
+                    hedges = METRICS.counter(metricPrefix + "hedges");
+                }
+                hedges.increment();
+            }
+            pending.incrementAndGet();
+            backup = attempt(true);
+            if (result.isDone()) {
+                cancel(backup);
+            }
+        }
+
+        private CompletableFuture<T> attempt(boolean hedged) {
+            CompletableFuture<T> future;
+            try {
+                future = supplier.get();
+            } catch (RuntimeException ex) {
+                onFailure(ex);
+                return null;
+            }
+            future.whenComplete((value, ex) -> {
+                if (ex != null) {
+                    onFailure(ex);
+                } else if (result.complete(value)) {
+                    record(clock.nanoTime() - startedAt);
+                    if (hedged && METRICS.isEnabled()) {
+                        if (wins == null) {
+                            wins = METRICS.counter(metricPrefix + "wins");
+                        }
+                        wins.increment();
+                    }
+                }
+            });
+            return future;
+        }
+
+        private void onFailure(Throwable ex) {
+            if (!result.isDone() && backupStarted.compareAndSet(false, true)) {
+                startBackup();
+            }
+            if (pending.decrementAndGet() == 0) {
+                result.completeExceptionally(ex);
+            }
+        }
+
+        private void cancel(CompletableFuture<T> future) {
+            if (future != null) {
+                future.cancel(true);
+            }
+        }
+    }
+}
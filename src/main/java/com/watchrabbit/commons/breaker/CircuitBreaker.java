@@ -0,0 +1,469 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.breaker;
+
+import com.watchrabbit.commons.clock.Clock;
+import com.watchrabbit.commons.clock.Clocks;
+import com.watchrabbit.commons.exception.SystemException;
+import com.watchrabbit.commons.metrics.Counter;
+import com.watchrabbit.commons.metrics.MetricsRegistry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stops calling failing dependency. Outcomes of last calls are kept in lock
+ * free ring buffer, when failure rate or slow call rate in this window
+ * reaches threshold breaker opens and rejects calls at once. After open
+ * duration breaker becomes half open and permits few trial calls, which
+ * close it again or open it for next period.
+ *
+ * <p>
+ * Breaker is thread safe and should be shared by all calls to the same
+ * dependency. Rates are approximate while outcomes are recorded concurrently.
+ *
+ * @author Mariusz
+ */
+public final class CircuitBreaker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    private static final MetricsRegistry METRICS = MetricsRegistry.getDefault();
+
+    private static final int FIELD_BITS = 21;
+
+    private static final long FIELD_MASK = (1L << FIELD_BITS) - 1;
+
+    private static final int RECORDED = 1;
+
+    private static final int FAILED = 2;
+
+    private static final int SLOW = 4;
+
+    public static enum State {
+
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Permission to make call, granted by breaker in its current state.
+     * Outcome of call is recorded only while breaker stays in state that
+     * granted permission, outcomes of calls permitted before breaker changed
+     * state are dropped. Calls permitted in the same state share permission,
+     * so acquiring it does not allocate.
+     */
+    public static interface Permission {
+
+        /**
+         * Records successful call.
+         *
+         * @param elapsedNanos duration of call
+         */
+        void onSuccess(long elapsedNanos);
+
+        /**
+         * Records failed call.
+         *
+         * @param elapsedNanos duration of call
+         */
+        void onError(long elapsedNanos);
+    }
+
+    private final AtomicReference<Phase> phase = new AtomicReference<>();
+
+    private int windowSize = 100;
+
+    private int minimumCalls = 10;
+
+    private double failureRateThreshold = 50;
+
+    private double slowCallRateThreshold = 100;
+
+    private long slowCallNanos = TimeUnit.SECONDS.toNanos(60);
+
+    private long openNanos = TimeUnit.SECONDS.toNanos(30);
+
+    private int halfOpenCalls = 10;
+
+    private Clock clock = Clocks.getDefault();
+
+    private String name = "breaker";
+
+    private String metricPrefix = "breaker.";
+
+    private SystemException rejection;
+
+    private Counter rejected;
+
+    private Counter opened;
+
+    private CircuitBreaker() {
+        this.rejection = SystemException.lightweight("Circuit breaker " + name + " is open", null);
+        phase.set(new Phase(State.CLOSED, 0, windowSize));
+    }
+
+    /**
+     * Creates closed breaker that opens when half of last hundred calls
+     * failed.
+     *
+     * @return new {@code CircuitBreaker}
+     */
+    public static CircuitBreaker create() {
+        return new CircuitBreaker();
+    }
+
+    /**
+     * Number of last calls, which outcomes are used to calculate rates.
+     *
+     * @param windowSize number of calls in sliding window
+     * @return {@code CircuitBreaker} with window size
+     */
+    public CircuitBreaker withWindowSize(int windowSize) {
+        if (windowSize < 1 || windowSize > FIELD_MASK) {
+            throw new IllegalArgumentException("Window size must be between 1 and " + FIELD_MASK);
+        }
+        this.windowSize = windowSize;
+        phase.set(new Phase(State.CLOSED, 0, windowSize));
+        return this;
+    }
+
+    /**
+     * Number of calls recorded in window before rates are compared with
+     * thresholds.
+     *
+     * @param minimumCalls minimum number of calls
+     * @return {@code CircuitBreaker} with minimum calls
+     */
+    public CircuitBreaker withMinimumCalls(int minimumCalls) {
+        this.minimumCalls = minimumCalls;
+        return this;
+    }
+
+    /**
+     * Percentage of failed calls that opens breaker.
+     *
+     * @param threshold percentage between {@code 0} and {@code 100}
+     * @return {@code CircuitBreaker} with failure rate threshold
+     */
+    public CircuitBreaker withFailureRateThreshold(double threshold) {
+        this.failureRateThreshold = threshold;
+        return this;
+    }
+
+    /**
+     * Percentage of slow calls that opens breaker.
+     *
+     * @param threshold percentage between {@code 0} and {@code 100}
+     * @param slowCall duration from which call is slow
+     * @param timeUnit of passed duration
+     * @return {@code CircuitBreaker} with slow call rate threshold
+     */
+    public CircuitBreaker withSlowCallRateThreshold(double threshold, long slowCall, TimeUnit timeUnit) {
+        this.slowCallRateThreshold = threshold;
+        this.slowCallNanos = timeUnit.toNanos(slowCall);
+        return this;
+    }
+
+    /**
+     * Time for which open breaker rejects calls, before it becomes half open.
+     *
+     * @param duration of open state
+     * @param timeUnit of passed duration
+     * @return {@code CircuitBreaker} with open duration
+     */
+    public CircuitBreaker withOpenDuration(long duration, TimeUnit timeUnit) {
+        this.openNanos = timeUnit.toNanos(duration);
+        return this;
+    }
+
+    /**
+     * Number of trial calls permitted by half open breaker.
+     *
+     * @param halfOpenCalls number of trial calls
+     * @return {@code CircuitBreaker} with trial calls
+     */
+    public CircuitBreaker withHalfOpenCalls(int halfOpenCalls) {
+        this.halfOpenCalls = halfOpenCalls;
+        return this;
+    }
+
+    /**
+     * Clock used to measure calls and open duration.
+     *
+     * @param clock source of monotonic time
+     * @return {@code CircuitBreaker} with clock
+     */
+    public CircuitBreaker withClock(Clock clock) {
+        this.clock = clock;
+        return this;
+    }
+
+    /**
+     * Name used in logs and in names of metrics:
+     * {@code breaker.<name>.rejected} and {@code breaker.<name>.opened}.
+     * Unnamed breaker records {@code breaker.rejected} and
+     * {@code breaker.opened}. Meters are registered when first value is
+     * recorded.
+     *
+     * @param name name of protected dependency
+     * @return {@code CircuitBreaker} with name
+     */
+    public CircuitBreaker withName(String name) {
+        this.name = name;
+        this.rejection = SystemException.lightweight("Circuit breaker " + name + " is open", null);
+        this.metricPrefix = "breaker." + name + ".";
+        this.rejected = null;
+        this.opened = null;
+        return this;
+    }
+
+    /**
+     * Invokes callable if breaker permits call, and records its outcome.
+     *
+     * @param <T> type of returned value
+     * @param callable protected call
+     * @return value returned by callable
+     * @throws SystemException if breaker is open, shared instance without
+     * stack trace is thrown, or if callable throws exception
+     */
+    public <T> T call(Callable<T> callable) {
+        Permission permission = tryAcquirePermission();
+        if (permission == null) {
+            throw rejection;
+        }
+        long startedAt = clock.nanoTime();
+        boolean succeeded = false;
+        try {
+            T result = callable.call();
+            succeeded = true;
+            return result;
+        } catch (Exception ex) {
+            throw new SystemException("Call protected by " + name + " throwed exception!", ex);
+        } finally {
+            if (succeeded) {
+                permission.onSuccess(clock.nanoTime() - startedAt);
+            } else {
+                permission.onError(clock.nanoTime() - startedAt);
+            }
+        }
+    }
+
+    /**
+     * Checks if call is permitted. Every permitted call must be followed by
+     * {@link Permission#onSuccess(long)} or {@link Permission#onError(long)}
+     * of returned permission, also when call throws {@code Error}, otherwise
+     * half open breaker waits for trial calls forever.
+     *
+     * @return permission of call, or {@code null} if call is rejected
+     */
+    public Permission tryAcquirePermission() {
+        while (true) {
+            Phase current = phase.get();
+            if (current.state == State.CLOSED) {
+                return current;
+            }
+            if (current.state == State.HALF_OPEN) {
+                if (current.tryAcquireTrial()) {
+                    return current;
+                }
+                return reject();
+            }
+            if (clock.nanoTime() - current.since < openNanos) {
+                return reject();
+            }
+            phase.compareAndSet(current, new Phase(State.HALF_OPEN, clock.nanoTime(), halfOpenCalls));
+        }
+    }
+
+    /**
+     * Returns current state of breaker. Open breaker becomes half open when
+     * next call is attempted after open duration.
+     *
+     * @return state of breaker
+     */
+    public State getState() {
+        return phase.get().state;
+    }
+
+    /**
+     * Returns percentage of failed calls in current window.
+     *
+     * @return failure rate, or {@code -1} if not enough calls were recorded
+     */
+    public double getFailureRate() {
+        Phase current = phase.get();
+        return rate(current.counts.get(), FIELD_BITS, current.state == State.CLOSED ? minimumCalls : halfOpenCalls);
+    }
+
+    /**
+     * Returns percentage of slow calls in current window.
+     *
+     * @return slow call rate, or {@code -1} if not enough calls were recorded
+     */
+    public double getSlowCallRate() {
+        Phase current = phase.get();
+        return rate(current.counts.get(), 0, current.state == State.CLOSED ? minimumCalls : halfOpenCalls);
+    }
+
+    /**
+     * Returns clock used by breaker to measure calls.
+     *
+     * @return clock of breaker
+     */
+    public Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * Returns shared exception thrown when breaker rejects call.
+     *
+     * @return exception without stack trace
+     */
+    public SystemException getRejection() {
+        return rejection;
+    }
+
+    /**
+     * Closes breaker and clears recorded calls.
+     */
+    public void reset() {
+        phase.set(new Phase(State.CLOSED, clock.nanoTime(), windowSize));
+    }
+
+    private Permission reject() {
+        if (METRICS.isEnabled()) {
+            if (rejected == null) {
+                rejected = METRICS.counter(metricPrefix + "rejected");
+            }
+            rejected.increment();
+        }
+        return null;
+    }
+
+    private void record(Phase current, int outcome) {
+        if (phase.get() != current) {
+            return;
+        }
+        long counts = current.add(outcome);
+        long calls = counts >>> 2 * FIELD_BITS;
+        if (current.state == State.CLOSED) {
+            if (calls >= minimumCalls && exceedsThresholds(counts)) {
+                open(current, counts);
+            }
+        } else if (calls >= halfOpenCalls) {
+            if (exceedsThresholds(counts)) {
+                open(current, counts);
+            } else if (phase.compareAndSet(current, new Phase(State.CLOSED, clock.nanoTime(), windowSize))) {
+                LOGGER.info("Circuit breaker {} closed", name);
+            }
+        }
+    }
+
+    private boolean exceedsThresholds(long counts) {
+        return rate(counts, FIELD_BITS, 1) >= failureRateThreshold
+                || rate(counts, 0, 1) >= slowCallRateThreshold;
+    }
+
+    private void open(Phase current, long counts) {
+        if (phase.compareAndSet(current, new Phase(State.OPEN, clock.nanoTime(), 0))) {
+            LOGGER.warn("Circuit breaker {} opened, failure rate: {}%, slow call rate: {}%", name,
+                    rate(counts, FIELD_BITS, 1), rate(counts, 0, 1));
+            if (METRICS.isEnabled()) {
+                if (opened == null) {
+                    opened = METRICS.counter(metricPrefix + "opened");
+                }
+                opened.increment();
+            }
+        }
+    }
+
+    private static double rate(long counts, int shift, int minimumCalls) {
+        long calls = counts >>> 2 * FIELD_BITS;
+        long count = (counts >>> shift) & FIELD_MASK;
+        if (calls < minimumCalls || calls == 0 || count > calls) {
+            return -1;
+        }
+        return count * 100.0 / calls;
+    }
+
+    /**
+     * State of breaker with calls recorded in it. Counts of calls, failures
+     * and slow calls are packed in single long, so they are updated
+     * atomically. Phase is permission of calls it granted, so their outcomes
+     * are never recorded in later phase.
+     */
+    private final class Phase implements Permission {
+
+        private final State state;
+
+        private final long since;
+
+        private final AtomicIntegerArray outcomes;
+
+        private final AtomicLong index = new AtomicLong();
+
+        private final AtomicLong counts = new AtomicLong();
+
+        private final AtomicInteger permits;
+
+        private Phase(State state, long since, int size) {
+            this.state = state;
+            this.since = since;
+            this.outcomes = state == State.CLOSED ? new AtomicIntegerArray(size) : null;
+            this.permits = new AtomicInteger(state == State.HALF_OPEN ? size : 0);
+        }
+
+        @Override
+        public void onSuccess(long elapsedNanos) {
+            record(this, elapsedNanos >= slowCallNanos ? RECORDED | SLOW : RECORDED);
+        }
+
+        @Override
+        public void onError(long elapsedNanos) {
+            record(this, elapsedNanos >= slowCallNanos ? RECORDED | FAILED | SLOW : RECORDED | FAILED);
+        }
+
+        private boolean tryAcquireTrial() {
+            for (int available = permits.get(); available > 0; available = permits.get()) {
+                if (permits.compareAndSet(available, available - 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private long add(int outcome) {
+            if (outcomes == null) {
+                return counts.addAndGet(pack(outcome));
+            }
+            int slot = (int) (index.getAndIncrement() % outcomes.length());
+            int previous = outcomes.getAndSet(slot, outcome);
+            return counts.addAndGet(pack(outcome) - pack(previous));
+        }
+
+        private long pack(int outcome) {
+            return ((long) (outcome & RECORDED) << 2 * FIELD_BITS)
+                    | ((long) (outcome & FAILED) >> 1 << FIELD_BITS)
+                    | (outcome & SLOW) >> 2;
+        }
+
+    }
+}
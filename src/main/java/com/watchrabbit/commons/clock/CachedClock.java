@@ -0,0 +1,123 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.clock;
+
+import java.time.Instant;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@code Clock} updated by background ticker thread with fixed resolution.
+ * Reading timestamp or {@code Instant} is single volatile read, without
+ * allocation and without locks, so clock can be used on hot paths like
+ * logging or metrics. Returned time is at most one resolution behind system
+ * time.
+ *
+ * <p>
+ * {@link #getDate()} returns new {@code Date} on every call, because
+ * {@code Date} is mutable. {@link #getCalendar()} reuses one
+ * {@code Calendar} per thread, so returned calendar is valid until next call
+ * on the same thread and should not be stored or modified.
+ *
+ * @author Mariusz
+ */
+public final class CachedClock implements Clock {
+
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+    private final long resolutionNanos;
+
+    private final ThreadLocal<Calendar> calendars = ThreadLocal.withInitial(Calendar::getInstance);
+
+    private final Thread ticker;
+
+    private volatile Instant instant = Instant.now();
+
+    private volatile boolean stopped;
+
+    private CachedClock(long resolutionNanos) {
+        this.resolutionNanos = resolutionNanos;
+        this.ticker = new Thread(this::run, "rabbit-cached-clock-" + INSTANCES.incrementAndGet());
+        this.ticker.setDaemon(true);
+        this.ticker.start();
+    }
+
+    /**
+     * Creates and starts new clock.
+     *
+     * @param resolution how often clock is updated
+     * @param timeUnit of passed resolution
+     * @return started {@code CachedClock}
+     */
+    public static CachedClock create(long resolution, TimeUnit timeUnit) {
+        if (resolution <= 0) {
+            throw new IllegalArgumentException("Resolution must be positive");
+        }
+        return new CachedClock(timeUnit.toNanos(resolution));
+    }
+
+    @Override
+    public Date getDate() {
+        return new Date(getTimestamp());
+    }
+
+    @Override
+    public long getTimestamp() {
+        return instant.toEpochMilli();
+    }
+
+    @Override
+    public Instant getInstant() {
+        return instant;
+    }
+
+    @Override
+    public long getEpochMicros() {
+        return SystemClock.toMicros(instant);
+    }
+
+    @Override
+    public Calendar getCalendar() {
+        Calendar calendar = calendars.get();
+        calendar.setTimeInMillis(getTimestamp());
+        return calendar;
+    }
+
+    /**
+     * Stops ticker thread. After stop clock returns time of last update.
+     */
+    public void stop() {
+        stopped = true;
+        LockSupport.unpark(ticker);
+    }
+
+    private void run() {
+        long next = System.nanoTime();
+        while (!stopped) {
+            instant = Instant.now();
+            next += resolutionNanos;
+            long delay = next - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(this, delay);
+            } else {
+                next = System.nanoTime();
+            }
+        }
+    }
+}
@@ -18,6 +18,9 @@ package com.watchrabbit.commons.clock;
 import java.time.Instant;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  *
@@ -32,4 +35,80 @@ public interface Clock {
     Instant getInstant();
 
     Calendar getCalendar();
+
+    /**
+     * Returns current value of monotonic time source in nanoseconds. Value
+     * has no relation to wall clock time and can be used only to measure
+     * elapsed time, same as {@code System.nanoTime()}.
+     *
+     * @return current value of monotonic time source
+     */
+    default long nanoTime() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Parks current thread for up to {@code nanos} of this clock time. Like
+     * {@code LockSupport.parkNanos} method may return earlier, when thread is
+     * unparked, interrupted or spuriously, so callers should check their
+     * deadline with {@link #nanoTime()} again.
+     *
+     * @param blocker object responsible for parking
+     * @param nanos maximum time to park
+     */
+    default void parkNanos(Object blocker, long nanos) {
+        LockSupport.parkNanos(blocker, nanos);
+    }
+
+    /**
+     * Parks current thread until {@link #nanoTime()} reaches deadline. Like
+     * {@link #parkNanos(Object, long)} may return earlier, but clocks moved
+     * by other threads compare deadline with their time after current thread
+     * is registered as parked, so advance of time can not be missed.
+     *
+     * @param blocker object responsible for parking
+     * @param deadline {@code nanoTime()} until which thread is parked
+     */
+    default void parkUntil(Object blocker, long deadline) {
+        long remaining = deadline - nanoTime();
+        if (remaining > 0) {
+            parkNanos(blocker, remaining);
+        }
+    }
+
+    /**
+     * Schedules task to be run after delay elapses on this clock. Clocks
+     * following system time return {@code null} and leave scheduling to
+     * timers of caller, clocks with own notion of time, like
+     * {@link VirtualClock}, run the task when their time reaches the delay.
+     *
+     * @param task to run
+     * @param delay after which task should be run
+     * @param timeUnit of passed delay
+     * @return future that can be used to cancel task, or {@code null} if
+     * caller should schedule task on system time
+     */
+    default Future<?> schedule(Runnable task, long delay, TimeUnit timeUnit) {
+        return null;
+    }
+
+    /**
+     * Returns {@link #nanoTime()} in milliseconds.
+     *
+     * @return current value of monotonic time source in milliseconds
+     */
+    default long monotonicMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(nanoTime());
+    }
+
+    /**
+     * Returns wall clock time in microseconds from the epoch without
+     * allocation. Resolution depends on implementation, by default it is
+     * millisecond resolution of {@link #getTimestamp()}.
+     *
+     * @return microseconds from 1970-01-01T00:00:00Z
+     */
+    default long getEpochMicros() {
+        return TimeUnit.MILLISECONDS.toMicros(getTimestamp());
+    }
 }
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.clock;
+
+/**
+ * Time source shared by the library. Timeouts of sleepers and futures, and
+ * stopwatches without explicit clock read time from {@link #getDefault()}.
+ * Tests can replace it for whole run, for example with {@link VirtualClock}:
+ *
+ * <pre>
+ * &#64;Before
+ * public void setUp() {
+ *     Clocks.setDefault(clock);
+ * }
+ *
+ * &#64;After
+ * public void tearDown() {
+ *     Clocks.reset();
+ * }
+ * </pre>
+ *
+ * Builders take default clock when they are created, so it should be set
+ * before code under test is invoked.
+ *
+ * @author Mariusz
+ */
+public final class Clocks {
+
+    private static final Clock SYSTEM = SystemClock.getInstance();
+
+    private static volatile Clock current = SYSTEM;
+
+    private Clocks() {
+    }
+
+    /**
+     * Returns clock used by default in the library.
+     *
+     * @return default {@code Clock}
+     */
+    public static Clock getDefault() {
+        return current;
+    }
+
+    /**
+     * Replaces clock used by default in the library.
+     *
+     * @param clock new default {@code Clock}
+     */
+    public static void setDefault(Clock clock) {
+        if (clock == null) {
+            throw new IllegalArgumentException("Clock can not be null");
+        }
+        current = clock;
+    }
+
+    /**
+     * Restores system clock as default clock of the library.
+     */
+    public static void reset() {
+        current = SYSTEM;
+    }
+}
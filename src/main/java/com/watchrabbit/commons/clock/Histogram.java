@@ -0,0 +1,212 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.clock;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free log-linear histogram of non negative {@code long} values, like
+ * latencies in nanoseconds. Values smaller than 64 are counted exactly, bigger
+ * values are counted in buckets that split every power of two into 32 linear
+ * sub buckets, so every recorded value is reported with relative error below
+ * 3.2%. Histogram has fixed size of about 15 KB and recording updates four
+ * counters: atomic increment of bucket, {@code LongAdder} of sum and two
+ * {@code LongAccumulator}'s of minimum and maximum, without allocation and
+ * without locks.
+ *
+ * <p>
+ * Statistics are read from {@link #snapshot()}, which reads every counter
+ * separately without lock. Snapshot taken while other threads record values
+ * is weakly consistent: it may include only some of concurrently recorded
+ * values, and its sum, minimum and maximum may not match its buckets.
+ *
+ * @author Mariusz
+ */
+public final class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT >> 1;
+
+    private static final int BUCKETS = index(Long.MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final LongAdder sum = new LongAdder();
+
+    private final LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+
+    private final LongAccumulator max = new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+    private Histogram() {
+    }
+
+    /**
+     * Creates empty histogram.
+     *
+     * @return new {@code Histogram}
+     */
+    public static Histogram create() {
+        return new Histogram();
+    }
+
+    /**
+     * Records value, negative values are recorded as zero.
+     *
+     * @param value to record
+     */
+    public void record(long value) {
+        long recorded = Math.max(0, value);
+        counts.incrementAndGet(index(recorded));
+        sum.add(recorded);
+        min.accumulate(recorded);
+        max.accumulate(recorded);
+    }
+
+    /**
+     * Removes all recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        sum.reset();
+        min.reset();
+        max.reset();
+    }
+
+    /**
+     * Takes weakly consistent copy of recorded values.
+     *
+     * @return {@code Snapshot} of this histogram
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, sum.sum(), min.get(), max.get());
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        int subBucket = (int) (value >>> shift);
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF + subBucket - SUB_BUCKET_HALF;
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int bucket = index - SUB_BUCKET_COUNT;
+        int shift = bucket / SUB_BUCKET_HALF + 1;
+        long subBucket = bucket % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        long highest = ((subBucket + 1) << shift) - 1;
+        return highest < 0 ? Long.MAX_VALUE : highest;
+    }
+
+    /**
+     * Immutable copy of histogram values.
+     */
+    public static final class Snapshot {
+
+        private final long[] counts;
+
+        private final long count;
+
+        private final long sum;
+
+        private final long min;
+
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long min, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.min = min;
+            this.max = max;
+        }
+
+        /**
+         * Returns number of recorded values.
+         *
+         * @return number of values
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Returns smallest recorded value, or zero if histogram is empty.
+         *
+         * @return smallest value
+         */
+        public long getMin() {
+            return count == 0 ? 0 : min;
+        }
+
+        /**
+         * Returns biggest recorded value, or zero if histogram is empty.
+         *
+         * @return biggest value
+         */
+        public long getMax() {
+            return count == 0 ? 0 : max;
+        }
+
+        /**
+         * Returns arithmetic mean of recorded values, or zero if histogram is
+         * empty.
+         *
+         * @return mean value
+         */
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Returns value below which given percentage of recorded values fall.
+         *
+         * @param percentile between 0 and 100, for example 99.9
+         * @return value at percentile, or zero if histogram is empty
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            double bounded = Math.min(100, Math.max(0, percentile));
+            long rank = Math.max(1, (long) Math.ceil(bounded / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.max(getMin(), Math.min(getMax(), highestEquivalentValue(i)));
+                }
+            }
+            return getMax();
+        }
+    }
+}
@@ -17,22 +17,72 @@ package com.watchrabbit.commons.clock;
 
 import com.watchrabbit.commons.callback.VoidCallable;
 import com.watchrabbit.commons.exception.SystemException;
+import com.watchrabbit.commons.metrics.Timer;
+import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 
 /**
+ * Measures time of execution of code. Stopwatch created with callable
+ * measures its invocations, stopwatch created without callable is controlled
+ * with {@link #start()}, {@link #split(TimeUnit)}, {@link #lap(TimeUnit)},
+ * {@link #stop()} and {@link #reset()}. These methods do not allocate, so
+ * single instance can time phases in tight loops, also as try-with-resources
+ * scope:
+ *
+ * <pre>
+ * Stopwatch stopwatch = Stopwatch.create();
+ * for (Item item : items) {
+ *     try (Stopwatch timer = stopwatch.start()) {
+ *         process(item);
+ *     }
+ * }
+ * long total = stopwatch.getExecutionTime(TimeUnit.MILLISECONDS);
+ * </pre>
+ *
+ * Measured times can be also recorded in {@link Timer} of
+ * {@code MetricsRegistry}, see {@link #withTimer(Timer)}.
  *
  * @author Mariusz
  */
-public class Stopwatch {
+public class Stopwatch implements AutoCloseable {
 
     private VoidCallable callable;
 
-    private Long nanosStart;
+    private Clock clock = Clocks.getDefault();
+
+    private long elapsed;
+
+    private long startedAt;
+
+    private long lapStartedAt;
 
-    private Long nanosEnd;
+    private boolean running;
 
     private boolean ended;
 
+    private int warmup;
+
+    private Timer timer;
+
+    /**
+     * Creates stopped Stopwatch without callable, controlled with
+     * {@link #start()} and {@link #stop()}.
+     *
+     * @return new {@code Stopwatch}
+     */
+    public static Stopwatch create() {
+        return new Stopwatch();
+    }
+
+    /**
+     * Creates and starts Stopwatch without callable.
+     *
+     * @return running {@code Stopwatch}
+     */
+    public static Stopwatch createStarted() {
+        return new Stopwatch().start();
+    }
+
     /**
      * Creates Stopwatch around passed callable.
      *
@@ -59,28 +109,374 @@ public class Stopwatch {
     }
 
     /**
-     * Invokes passed callable and measures time.
+     * Clock used to measure time of execution.
      *
-     * @return
+     * @param clock source of {@link Clock#nanoTime()}
+     * @return this {@code Stopwatch}
+     */
+    public Stopwatch withClock(Clock clock) {
+        this.clock = clock;
+        return this;
+    }
+
+    /**
+     * Timer recording every measured time: invocations of callable, calls of
+     * {@link #time(Callable)} and time between {@link #start()} and
+     * {@link #stop()}. Times are recorded whether registry of timer is
+     * enabled or not.
+     *
+     * @param timer recording measured times
+     * @return this {@code Stopwatch}
+     */
+    public Stopwatch withTimer(Timer timer) {
+        this.timer = timer;
+        return this;
+    }
+
+    /**
+     * Number of invocations of callable before measured invocations of
+     * {@link #repeat(int)}, so measured code is already compiled and caches
+     * are warm.
+     *
+     * @param iterations number of not measured invocations
+     * @return this {@code Stopwatch}
+     */
+    public Stopwatch withWarmup(int iterations) {
+        this.warmup = iterations;
+        return this;
+    }
+
+    /**
+     * Invokes callable number of times, after warm up iterations, and records
+     * time of every invocation.
+     *
+     * @param iterations number of measured invocations
+     * @return {@code Statistics} of measured invocations
+     * @throws SystemException if Stopwatch was created without callable
+     */
+    public Statistics repeat(int iterations) {
+        return repeat(iterations, Histogram.create());
+    }
+
+    /**
+     * Invokes callable number of times, after warm up iterations, and records
+     * time of every invocation in nanoseconds in passed histogram. Histogram
+     * can be shared between many runs to aggregate their statistics.
+     *
+     * @param iterations number of measured invocations
+     * @param histogram to record times of invocations in
+     * @return {@code Statistics} of all values recorded in histogram
+     * @throws SystemException if Stopwatch was created without callable
+     */
+    public Statistics repeat(int iterations, Histogram histogram) {
+        if (callable == null) {
+            throw new SystemException("Can't repeat Stopwatch created without callable, use create(VoidCallable)");
+        }
+        for (int i = 0; i < warmup; i++) {
+            callable.call();
+        }
+        for (int i = 0; i < iterations; i++) {
+            long start = clock.nanoTime();
+            callable.call();
+            long time = clock.nanoTime() - start;
+            histogram.record(time);
+            record(time);
+        }
+        return new Statistics(histogram.snapshot());
+    }
+
+    /**
+     * Invokes passed callable and measures time. Stopwatch created without
+     * callable is started, or resumed if it was stopped, and measures time
+     * until {@link #stop()}.
+     *
+     * @return this {@code Stopwatch}
      */
     public Stopwatch start() {
-        nanosStart = System.nanoTime();
-        callable.call();
-        ended = true;
-        nanosEnd = System.nanoTime();
+        if (callable != null) {
+            long start = clock.nanoTime();
+            callable.call();
+            elapsed = clock.nanoTime() - start;
+            ended = true;
+            record(elapsed);
+        } else if (!running) {
+            startedAt = clock.nanoTime();
+            lapStartedAt = startedAt;
+            running = true;
+        }
         return this;
     }
 
+    /**
+     * Returns time measured since start, including time measured before
+     * stopwatch was stopped and resumed, without stopping it.
+     *
+     * @param timeUnit of returned time
+     * @return measured time
+     */
+    public long split(TimeUnit timeUnit) {
+        long measured = running ? elapsed + clock.nanoTime() - startedAt : elapsed;
+        return timeUnit.convert(measured, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns time since start or previous lap and starts next lap.
+     *
+     * @param timeUnit of returned time
+     * @return time of finished lap
+     */
+    public long lap(TimeUnit timeUnit) {
+        if (!running) {
+            throw new SystemException("Can't measure lap if Stopwatch isn't running");
+        }
+        long now = clock.nanoTime();
+        long lap = now - lapStartedAt;
+        lapStartedAt = now;
+        return timeUnit.convert(lap, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops stopwatch and adds time since start to measured time. Stopped
+     * stopwatch can be resumed with {@link #start()}.
+     *
+     * @return this {@code Stopwatch}
+     */
+    public Stopwatch stop() {
+        if (running) {
+            long time = clock.nanoTime() - startedAt;
+            elapsed += time;
+            running = false;
+            record(time);
+            ended = true;
+        }
+        return this;
+    }
+
+    /**
+     * Stops stopwatch and clears measured time.
+     *
+     * @return this {@code Stopwatch}
+     */
+    public Stopwatch reset() {
+        elapsed = 0;
+        running = false;
+        ended = false;
+        return this;
+    }
+
+    /**
+     * Stops stopwatch, so it can be used as try-with-resources scope.
+     */
+    @Override
+    public void close() {
+        stop();
+    }
+
+    /**
+     * Returns {@code true} if stopwatch was started and not stopped.
+     *
+     * @return {@code true} if stopwatch is running
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Invokes passed callable and measures time of its execution. Time is
+     * also added to time measured by stopped stopwatch, running stopwatch
+     * already measures it. Any {@code Exception}'s thrown by callable are
+     * propagate as SystemException.
+     *
+     * @param <T> type of result of callable
+     * @param callable to invoke
+     * @return result of callable with time of its execution
+     * @throws SystemException if callable throws exception
+     */
+    public <T> Timed<T> time(Callable<T> callable) throws SystemException {
+        long start = clock.nanoTime();
+        long time = 0;
+        try {
+            T result = callable.call();
+            time = clock.nanoTime() - start;
+            return new Timed<>(result, time);
+        } catch (Exception ex) {
+            time = clock.nanoTime() - start;
+            throw new SystemException("Timed callable throwed exception!", ex);
+        } finally {
+            record(time);
+            if (!running) {
+                elapsed += time;
+                ended = true;
+            }
+        }
+    }
+
     /**
      * Returns time of execution of callable, converted to {@code TimeUnit}.
+     * For stopwatch without callable returns measured time, like
+     * {@link #split(TimeUnit)}.
      *
      * @param timeUnit of execution time.
-     * @return
+     * @return measured time
      */
     public long getExecutionTime(TimeUnit timeUnit) {
-        if (!ended) {
+        if (!ended && !running) {
             throw new SystemException("Can't return execution time if Stopwatch wasn't started");
         }
-        return timeUnit.convert(nanosEnd - nanosStart, TimeUnit.NANOSECONDS);
+        return split(timeUnit);
+    }
+
+    private void record(long time) {
+        if (timer != null) {
+            timer.record(time);
+        }
+    }
+
+    /**
+     * Result of callable with time of its execution.
+     *
+     * @param <T> type of result
+     */
+    public static final class Timed<T> {
+
+        private final T result;
+
+        private final long elapsedNanos;
+
+        private Timed(T result, long elapsedNanos) {
+            this.result = result;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * Returns result of callable.
+         *
+         * @return result
+         */
+        public T getResult() {
+            return result;
+        }
+
+        /**
+         * Returns time of execution in nanoseconds.
+         *
+         * @return elapsed nanoseconds
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * Returns time of execution converted to {@code TimeUnit}.
+         *
+         * @param timeUnit of returned time
+         * @return elapsed time
+         */
+        public long getElapsed(TimeUnit timeUnit) {
+            return timeUnit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Statistics of repeated invocations of callable.
+     */
+    public static final class Statistics {
+
+        private final Histogram.Snapshot snapshot;
+
+        private Statistics(Histogram.Snapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        /**
+         * Returns number of measured invocations.
+         *
+         * @return number of invocations
+         */
+        public long getCount() {
+            return snapshot.getCount();
+        }
+
+        /**
+         * Returns time of fastest invocation.
+         *
+         * @param timeUnit of returned time
+         * @return minimal time
+         */
+        public long getMin(TimeUnit timeUnit) {
+            return timeUnit.convert(snapshot.getMin(), TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Returns mean time of invocation.
+         *
+         * @param timeUnit of returned time
+         * @return mean time
+         */
+        public double getMean(TimeUnit timeUnit) {
+            return snapshot.getMean() / timeUnit.toNanos(1);
+        }
+
+        /**
+         * Returns time below which given percentage of invocations finished.
+         *
+         * @param percentile between 0 and 100, for example 99.9
+         * @param timeUnit of returned time
+         * @return time at percentile
+         */
+        public long getPercentile(double percentile, TimeUnit timeUnit) {
+            return timeUnit.convert(snapshot.getValueAtPercentile(percentile), TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Returns median time of invocation.
+         *
+         * @param timeUnit of returned time
+         * @return 50th percentile
+         */
+        public long getMedian(TimeUnit timeUnit) {
+            return getPercentile(50, timeUnit);
+        }
+
+        /**
+         * Returns time below which 99% of invocations finished.
+         *
+         * @param timeUnit of returned time
+         * @return 99th percentile
+         */
+        public long get99thPercentile(TimeUnit timeUnit) {
+            return getPercentile(99, timeUnit);
+        }
+
+        /**
+         * Returns time below which 99.9% of invocations finished.
+         *
+         * @param timeUnit of returned time
+         * @return 99.9th percentile
+         */
+        public long get999thPercentile(TimeUnit timeUnit) {
+            return getPercentile(99.9, timeUnit);
+        }
+
+        /**
+         * Returns time of slowest invocation.
+         *
+         * @param timeUnit of returned time
+         * @return maximal time
+         */
+        public long getMax(TimeUnit timeUnit) {
+            return timeUnit.convert(snapshot.getMax(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + getCount()
+                    + ", min=" + getMin(TimeUnit.NANOSECONDS)
+                    + ", mean=" + Math.round(getMean(TimeUnit.NANOSECONDS))
+                    + ", p50=" + getMedian(TimeUnit.NANOSECONDS)
+                    + ", p99=" + get99thPercentile(TimeUnit.NANOSECONDS)
+                    + ", p99.9=" + get999thPercentile(TimeUnit.NANOSECONDS)
+                    + ", max=" + getMax(TimeUnit.NANOSECONDS) + " ns";
+        }
     }
 }
@@ -26,9 +26,17 @@ import java.util.Date;
  */
 public final class SystemClock implements Clock {
 
-    private UncheckedCallable<Date> dateCallable = Date::new;
+    private static final UncheckedCallable<Date> SYSTEM_DATE = Date::new;
 
-    private UncheckedCallable<Instant> instantCallable = Instant::now;
+    private UncheckedCallable<Date> dateCallable = SYSTEM_DATE;
+
+    private static final UncheckedCallable<Instant> SYSTEM_INSTANT = Instant::now;
+
+    private static final long MAX_DRIFT_MICROS = 2000;
+
+    private static volatile Anchor anchor = Anchor.now();
+
+    private UncheckedCallable<Instant> instantCallable = SYSTEM_INSTANT;
 
     private UncheckedCallable<Calendar> calendarCallable = Calendar::getInstance;
 
@@ -51,6 +59,9 @@ public final class SystemClock implements Clock {
 
     @Override
     public long getTimestamp() {
+        if (dateCallable == SYSTEM_DATE) {
+            return System.currentTimeMillis();
+        }
         return dateCallable.call().getTime();
     }
 
@@ -59,6 +70,34 @@ public final class SystemClock implements Clock {
         return instantCallable.call();
     }
 
+    /**
+     * Returns wall clock time with microsecond resolution. Time is measured
+     * with {@code System.nanoTime()} from anchor taken from
+     * {@code Instant.now()}, anchor is taken again when wall clock drifts
+     * from it more than two milliseconds. If instant producer is set time is
+     * taken from it.
+     *
+     * @return microseconds from 1970-01-01T00:00:00Z
+     */
+    @Override
+    public long getEpochMicros() {
+        if (instantCallable != SYSTEM_INSTANT) {
+            return toMicros(instantCallable.call());
+        }
+        Anchor current = anchor;
+        long micros = current.epochMicros + (System.nanoTime() - current.nanos) / 1000;
+        if (Math.abs(micros - System.currentTimeMillis() * 1000) > MAX_DRIFT_MICROS) {
+            current = Anchor.now();
+            anchor = current;
+            micros = current.epochMicros;
+        }
+        return micros;
+    }
+
+    static long toMicros(Instant instant) {
+        return instant.getEpochSecond() * 1_000_000 + instant.getNano() / 1000;
+    }
+
     public SystemClock withInstantProducer(UncheckedCallable<Instant> producer) {
         this.instantCallable = producer;
         return this;
@@ -73,4 +112,20 @@ public final class SystemClock implements Clock {
         this.calendarCallable = producer;
         return this;
     }
+
+    private static final class Anchor {
+
+        private final long epochMicros;
+
+        private final long nanos;
+
+        private Anchor(long epochMicros, long nanos) {
+            this.epochMicros = epochMicros;
+            this.nanos = nanos;
+        }
+
+        private static Anchor now() {
+            return new Anchor(toMicros(Instant.now()), System.nanoTime());
+        }
+    }
 }
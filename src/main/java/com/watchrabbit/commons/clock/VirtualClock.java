@@ -0,0 +1,251 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.clock;
+
+import java.time.Instant;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@code Clock} with virtual time, that moves only when {@link #advance(long,
+ * TimeUnit)} is called. Threads parked by sleepers using this clock wake up
+ * when time is advanced past their deadline, and tasks scheduled with
+ * {@link #schedule(Runnable, long, TimeUnit)} are run in order of their
+ * deadlines, so ten minutes of timeouts in tests take microseconds and keep
+ * the same ordering.
+ *
+ * <p>
+ * Clock can be passed to builders with {@code withClock}, or set for whole
+ * test run with {@link Clocks#setDefault(Clock)}:
+ *
+ * <pre>
+ * VirtualClock clock = VirtualClock.create();
+ * CompletableFuture&lt;Boolean&gt; done = SleepBuilder.&lt;Boolean&gt;sleep()
+ *         .withClock(clock)
+ *         .withTimeout(10, TimeUnit.MINUTES)
+ *         ...
+ *         .buildAsync();
+ * clock.advance(10, TimeUnit.MINUTES);
+ * </pre>
+ *
+ * @author Mariusz
+ */
+public final class VirtualClock implements Clock {
+
+    private final long startMicros;
+
+    private final Queue<Timer> timers = new PriorityQueue<>();
+
+    private final Set<Thread> parked = ConcurrentHashMap.newKeySet();
+
+    private volatile long nanos;
+
+    private long sequence;
+
+    private VirtualClock(long startMicros) {
+        this.startMicros = startMicros;
+    }
+
+    /**
+     * Creates virtual clock starting at current system time.
+     *
+     * @return new {@code VirtualClock}
+     */
+    public static VirtualClock create() {
+        return create(Instant.now());
+    }
+
+    /**
+     * Creates virtual clock starting at passed instant.
+     *
+     * @param start initial wall clock time
+     * @return new {@code VirtualClock}
+     */
+    public static VirtualClock create(Instant start) {
+        return new VirtualClock(SystemClock.toMicros(start));
+    }
+
+    /**
+     * Moves time forward. Scheduled tasks with deadline within advanced time
+     * are run on calling thread in order of deadlines, with time set to their
+     * deadline, and parked threads are woken up after every step.
+     *
+     * @param duration by which time is moved
+     * @param timeUnit of passed duration
+     */
+    public void advance(long duration, TimeUnit timeUnit) {
+        if (duration < 0) {
+            throw new IllegalArgumentException("Time can not be moved back");
+        }
+        long target;
+        synchronized (this) {
+            target = nanos + Math.min(timeUnit.toNanos(duration), Long.MAX_VALUE - nanos);
+        }
+        while (true) {
+            Timer timer;
+            synchronized (this) {
+                timer = timers.peek();
+                if (timer == null || timer.deadline > target) {
+                    nanos = Math.max(nanos, target);
+                    timer = null;
+                } else {
+                    timers.poll();
+                    nanos = Math.max(nanos, timer.deadline);
+                }
+            }
+            wakeUpParked();
+            if (timer == null) {
+                return;
+            }
+            timer.run();
+        }
+    }
+
+    /**
+     * Schedules task to be run when time is advanced by given delay.
+     *
+     * @param task to run
+     * @param delay after which task should be run
+     * @param timeUnit of passed delay
+     * @return future that can be used to cancel task
+     */
+    @Override
+    public synchronized Future<?> schedule(Runnable task, long delay, TimeUnit timeUnit) {
+        long delayNanos = Math.max(0, timeUnit.toNanos(delay));
+        Timer timer = new Timer(task, nanos + Math.min(delayNanos, Long.MAX_VALUE - nanos), sequence++);
+        timers.add(timer);
+        return timer;
+    }
+
+    /**
+     * Returns number of threads parked on this clock and tasks waiting for
+     * their deadline. Can be used by tests to wait until sleepers are ready,
+     * before time is advanced.
+     *
+     * @return number of waiting threads and tasks
+     */
+    public synchronized int getWaiting() {
+        timers.removeIf(Timer::isCancelled);
+        return parked.size() + timers.size();
+    }
+
+    /**
+     * Parks current thread until time is advanced, for not longer than
+     * {@code nanos} of virtual time.
+     *
+     * @param blocker object responsible for parking
+     * @param nanos maximum virtual time to park
+     */
+    @Override
+    public void parkNanos(Object blocker, long nanos) {
+        Thread thread = Thread.currentThread();
+        parked.add(thread);
+        try {
+            long start = this.nanos;
+            if (this.nanos - start < nanos) {
+                LockSupport.park(blocker);
+            }
+        } finally {
+            parked.remove(thread);
+        }
+    }
+
+    /**
+     * Parks current thread until time is advanced to deadline. Thread is
+     * registered as parked before time is compared with deadline, so
+     * concurrent {@link #advance(long, TimeUnit)} either is seen by this
+     * method or unparks the thread.
+     *
+     * @param blocker object responsible for parking
+     * @param deadline virtual {@link #nanoTime()} until which thread is parked
+     */
+    @Override
+    public void parkUntil(Object blocker, long deadline) {
+        Thread thread = Thread.currentThread();
+        parked.add(thread);
+        try {
+            if (nanos - deadline < 0) {
+                LockSupport.park(blocker);
+            }
+        } finally {
+            parked.remove(thread);
+        }
+    }
+
+    @Override
+    public long nanoTime() {
+        return nanos;
+    }
+
+    @Override
+    public long getEpochMicros() {
+        return startMicros + nanos / 1000;
+    }
+
+    @Override
+    public Date getDate() {
+        return new Date(getTimestamp());
+    }
+
+    @Override
+    public long getTimestamp() {
+        return TimeUnit.MICROSECONDS.toMillis(getEpochMicros());
+    }
+
+    @Override
+    public Instant getInstant() {
+        long micros = getEpochMicros();
+        return Instant.ofEpochSecond(TimeUnit.MICROSECONDS.toSeconds(micros), TimeUnit.MICROSECONDS.toNanos(micros % 1_000_000));
+    }
+
+    @Override
+    public Calendar getCalendar() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(getTimestamp());
+        return calendar;
+    }
+
+    private void wakeUpParked() {
+        parked.forEach(LockSupport::unpark);
+    }
+
+    private static final class Timer extends FutureTask<Void> implements Comparable<Timer> {
+
+        private final long deadline;
+
+        private final long sequence;
+
+        private Timer(Runnable task, long deadline, long sequence) {
+            super(task, null);
+            this.deadline = deadline;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Timer other) {
+            int byDeadline = Long.compare(deadline, other.deadline);
+            return byDeadline != 0 ? byDeadline : Long.compare(sequence, other.sequence);
+        }
+    }
+}
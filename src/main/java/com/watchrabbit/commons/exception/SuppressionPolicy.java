@@ -0,0 +1,239 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.exception;
+
+import com.watchrabbit.commons.clock.Clock;
+import com.watchrabbit.commons.clock.Clocks;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+
+/**
+ * Decides how exceptions suppressed by
+ * {@link Throwables#suppress(SuppressionPolicy, com.watchrabbit.commons.callback.CheckedConsumer)}
+ * are logged, so logging cost stays bounded when downstream system fails and
+ * every call throws.
+ *
+ * <p>
+ * Policy keeps state of every call site, call site is identified by class of
+ * wrapped lambda, so the same lambda wrapped many times shares its state.
+ * For every call site policy:
+ *
+ * <ul>
+ * <li>logs only one of {@link #withSampling(int)} exceptions,
+ * <li>logs not more than {@link #withRateLimit(int, long, TimeUnit)}
+ * exceptions in period, using token bucket,
+ * <li>logs aggregated counts, like
+ * {@code Suppressed 12304 x IOException in last 10 s}, every
+ * {@link #withSummary(long, TimeUnit)} interval. Summary is logged with next
+ * suppressed exception after interval elapses,
+ * <li>logs exceptions without stack trace if
+ * {@link #withStackTraces(boolean)} is disabled.
+ * </ul>
+ *
+ * Policy created with {@link #create()} logs every exception with stack trace,
+ * same as {@link Throwables#suppress(com.watchrabbit.commons.callback.CheckedConsumer)}.
+ *
+ * @author Mariusz
+ */
+public final class SuppressionPolicy {
+
+    private final Map<Class<?>, Site> sites = new ConcurrentHashMap<>();
+
+    private int sampling = 1;
+
+    private int burst;
+
+    private long refillNanos;
+
+    private long summaryNanos;
+
+    private boolean stackTraces = true;
+
+    private Clock clock = Clocks.getDefault();
+
+    private SuppressionPolicy() {
+    }
+
+    /**
+     * Creates policy that logs every exception with stack trace.
+     *
+     * @return new {@code SuppressionPolicy}
+     */
+    public static SuppressionPolicy create() {
+        return new SuppressionPolicy();
+    }
+
+    /**
+     * Logs only one of every {@code oneOf} exceptions suppressed at call site.
+     *
+     * @param oneOf sampling rate, {@code 1} logs every exception
+     * @return {@code SuppressionPolicy} with sampling
+     */
+    public SuppressionPolicy withSampling(int oneOf) {
+        if (oneOf < 1) {
+            throw new IllegalArgumentException("Sampling must be positive, got " + oneOf);
+        }
+        this.sampling = oneOf;
+        return this;
+    }
+
+    /**
+     * Limits number of exceptions logged at call site to {@code logs} in
+     * {@code period}, with burst up to {@code logs}.
+     *
+     * @param logs number of exceptions logged in period
+     * @param period of rate limit
+     * @param timeUnit of passed period
+     * @return {@code SuppressionPolicy} with rate limit
+     */
+    public SuppressionPolicy withRateLimit(int logs, long period, TimeUnit timeUnit) {
+        if (logs < 1 || period <= 0) {
+            throw new IllegalArgumentException("Rate limit must be positive");
+        }
+        this.burst = logs;
+        this.refillNanos = Math.max(1, timeUnit.toNanos(period) / logs);
+        return this;
+    }
+
+    /**
+     * Logs aggregated counts of suppressed exceptions at call site, by type,
+     * once in interval.
+     *
+     * @param interval of aggregation
+     * @param timeUnit of passed interval
+     * @return {@code SuppressionPolicy} with summary
+     */
+    public SuppressionPolicy withSummary(long interval, TimeUnit timeUnit) {
+        this.summaryNanos = timeUnit.toNanos(interval);
+        return this;
+    }
+
+    /**
+     * Logs exceptions with or without stack trace. Without stack trace only
+     * type and message of exception are logged. Disabling stack traces only
+     * skips printing them, stack trace is still captured when exception is
+     * created, to avoid that cost throw exceptions created with
+     * {@link SystemException#lightweight(Throwable)}.
+     *
+     * @param stackTraces {@code false} to skip stack traces
+     * @return {@code SuppressionPolicy} with stack traces setting
+     */
+    public SuppressionPolicy withStackTraces(boolean stackTraces) {
+        this.stackTraces = stackTraces;
+        return this;
+    }
+
+    /**
+     * Clock used to measure rate limit and summary interval.
+     *
+     * @param clock source of monotonic time
+     * @return {@code SuppressionPolicy} with clock
+     */
+    public SuppressionPolicy withClock(Clock clock) {
+        this.clock = clock;
+        return this;
+    }
+
+    /**
+     * Records exception suppressed at call site and logs it if policy allows.
+     *
+     * @return {@code true} if exception was logged
+     */
+    boolean suppressed(Object callSite, Logger logger, String message, Exception ex) {
+        Site site = sites.computeIfAbsent(callSite.getClass(), Site::new);
+        long now = clock.nanoTime();
+        if (summaryNanos > 0) {
+            site.summarize(logger, now);
+            site.count(ex);
+        }
+        if (site.sample() && site.acquire(now)) {
+            if (stackTraces) {
+                logger.info(message, ex);
+            } else {
+                logger.info(message + ": {}", ex.toString());
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private final class Site {
+
+        private final String name;
+
+        private final AtomicLong events = new AtomicLong();
+
+        private final Map<Class<?>, LongAdder> counts = new ConcurrentHashMap<>();
+
+        private final AtomicLong windowStart;
+
+        private long tokens;
+
+        private long refilledAt;
+
+        private Site(Class<?> callSite) {
+            String className = callSite.getName();
+            int lambda = className.indexOf("$$Lambda");
+            this.name = lambda < 0 ? className : className.substring(0, lambda);
+            long now = clock.nanoTime();
+            this.windowStart = new AtomicLong(now);
+            this.tokens = burst;
+            this.refilledAt = now;
+        }
+
+        private boolean sample() {
+            return sampling == 1 || events.getAndIncrement() % sampling == 0;
+        }
+
+        private synchronized boolean acquire(long now) {
+            if (burst == 0) {
+                return true;
+            }
+            long refilled = (now - refilledAt) / refillNanos;
+            if (refilled > 0) {
+                tokens = Math.min(burst, tokens + refilled);
+                refilledAt += refilled * refillNanos;
+            }
+            if (tokens == 0) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+
+        private void count(Exception ex) {
+            counts.computeIfAbsent(ex.getClass(), type -> new LongAdder()).increment();
+        }
+
+        private void summarize(Logger logger, long now) {
+            long start = windowStart.get();
+            if (now - start < summaryNanos || !windowStart.compareAndSet(start, now)) {
+                return;
+            }
+            long seconds = TimeUnit.NANOSECONDS.toSeconds(now - start);
+            counts.forEach((type, count) -> {
+                long suppressed = count.sumThenReset();
+                if (suppressed > 0) {
+                    logger.info("Suppressed {} x {} in last {} s at {}", suppressed, type.getSimpleName(), seconds, name);
+                }
+            });
+        }
+    }
+}
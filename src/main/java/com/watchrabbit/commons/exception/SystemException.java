@@ -21,6 +21,13 @@ package com.watchrabbit.commons.exception;
  */
 public class SystemException extends RuntimeException {
 
+    /**
+     * Shared exception signalling that thread was interrupted. It has no stack
+     * trace and suppression is disabled, so it is safe to throw it from
+     * many threads.
+     */
+    public static final SystemException INTERRUPTED = new SystemException("Thread interrupted", null, false, false);
+
     public SystemException() {
     }
 
@@ -35,4 +42,32 @@ public class SystemException extends RuntimeException {
     public SystemException(String message, Throwable cause) {
         super(message, cause);
     }
+
+    protected SystemException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+
+    /**
+     * Creates exception without stack trace and with suppression disabled.
+     * Wrapping is then as cheap as allocation, stack trace of cause is still
+     * available. Method reference can be used as
+     * {@link Throwables.ExceptionWrapper}.
+     *
+     * @param cause wrapped exception
+     * @return lightweight {@code SystemException}
+     */
+    public static SystemException lightweight(Throwable cause) {
+        return new SystemException(cause == null ? null : cause.toString(), cause, false, false);
+    }
+
+    /**
+     * Creates exception without stack trace and with suppression disabled.
+     *
+     * @param message detail message
+     * @param cause wrapped exception, may be {@code null}
+     * @return lightweight {@code SystemException}
+     */
+    public static SystemException lightweight(String message, Throwable cause) {
+        return new SystemException(message, cause, false, false);
+    }
 }
@@ -15,8 +15,12 @@
  */
 package com.watchrabbit.commons.exception;
 
+import com.watchrabbit.commons.breaker.CircuitBreaker;
 import com.watchrabbit.commons.callback.CheckedConsumer;
 import com.watchrabbit.commons.callback.CheckedPredicate;
+import com.watchrabbit.commons.clock.Clock;
+import com.watchrabbit.commons.metrics.Counter;
+import com.watchrabbit.commons.metrics.MetricsRegistry;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import org.slf4j.Logger;
@@ -30,6 +34,10 @@ public class Throwables {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Throwables.class);
 
+    private static final MetricsRegistry METRICS = MetricsRegistry.getDefault();
+
+    private static final Counter SUPPRESSED = METRICS.counter("throwables.suppressed");
+
     @FunctionalInterface
     public static interface ExceptionWrapper<E> {
 
@@ -40,6 +48,14 @@ public class Throwables {
         return propagate(consumer, SystemException::new);
     }
 
+    /**
+     * Propagates exceptions wrapped in {@code SystemException} without stack
+     * trace, see {@link SystemException#lightweight(Throwable)}.
+     */
+    public static <T> Consumer<T> propagateLightweightFromConsumer(CheckedConsumer<T> consumer) throws SystemException {
+        return propagate(consumer, SystemException::lightweight);
+    }
+
     public static <T, E extends RuntimeException> Consumer<T> propagate(CheckedConsumer<T> consumer, ExceptionWrapper<E> wrapper) throws E {
         return (T t) -> {
             try {
@@ -55,6 +71,14 @@ public class Throwables {
         return propagate(predicate, SystemException::new);
     }
 
+    /**
+     * Propagates exceptions wrapped in {@code SystemException} without stack
+     * trace, see {@link SystemException#lightweight(Throwable)}.
+     */
+    public static <T> Predicate<T> propagateLightweightFromPredicate(CheckedPredicate<T> predicate) throws SystemException {
+        return propagate(predicate, SystemException::lightweight);
+    }
+
     public static <T, E extends RuntimeException> Predicate<T> propagate(CheckedPredicate<T> predicate, ExceptionWrapper<E> wrapper) throws E {
         return (T t) -> {
             try {
@@ -72,17 +96,145 @@ public class Throwables {
                 return predicate.test(t);
             } catch (Exception ex) {
                 LOGGER.info("Supressed exception, returning default value", ex);
+                if (METRICS.isEnabled()) {
+                    SUPPRESSED.increment();
+                }
+                return defaultValue;
+            }
+        };
+    }
+
+    /**
+     * Same as {@link #suppress(boolean, CheckedPredicate)}, but suppressed
+     * exceptions are logged according to passed policy.
+     *
+     * @param <T> type of argument of predicate
+     * @param policy deciding how suppressed exceptions are logged
+     * @param defaultValue returned when predicate throws exception
+     * @param predicate to wrap
+     * @return predicate suppressing exceptions
+     */
+    public static <T> Predicate<T> suppress(SuppressionPolicy policy, boolean defaultValue, CheckedPredicate<T> predicate) {
+        return (T t) -> {
+            try {
+                return predicate.test(t);
+            } catch (Exception ex) {
+                policy.suppressed(predicate, LOGGER, "Supressed exception, returning default value", ex);
+                if (METRICS.isEnabled()) {
+                    SUPPRESSED.increment();
+                }
                 return defaultValue;
             }
         };
     }
 
+    /**
+     * Same as {@link #suppress(CheckedConsumer)}, but suppressed exceptions
+     * are logged according to passed policy.
+     *
+     * @param <T> type of argument of consumer
+     * @param policy deciding how suppressed exceptions are logged
+     * @param consumer to wrap
+     * @return consumer suppressing exceptions
+     */
+    public static <T> Consumer<T> suppress(SuppressionPolicy policy, CheckedConsumer<T> consumer) {
+        return (T t) -> {
+            try {
+                consumer.accept(t);
+            } catch (Exception ex) {
+                policy.suppressed(consumer, LOGGER, "Supressed exception", ex);
+                if (METRICS.isEnabled()) {
+                    SUPPRESSED.increment();
+                }
+            }
+        };
+    }
+
     public static <T> Consumer<T> suppress(CheckedConsumer<T> consumer) {
         return (T t) -> {
             try {
                 consumer.accept(t);
             } catch (Exception ex) {
                 LOGGER.info("Supressed exception", ex);
+                if (METRICS.isEnabled()) {
+                    SUPPRESSED.increment();
+                }
+            }
+        };
+    }
+
+    /**
+     * Wraps consumer with circuit breaker. While breaker is open consumer is
+     * not invoked and shared {@link CircuitBreaker#getRejection()} exception
+     * is thrown, exceptions thrown by consumer are recorded by breaker and
+     * propagated as {@code SystemException}.
+     *
+     * @param <T> type of argument of consumer
+     * @param breaker protecting consumer
+     * @param consumer to wrap
+     * @return consumer guarded by breaker
+     */
+    public static <T> Consumer<T> guard(CircuitBreaker breaker, CheckedConsumer<T> consumer) throws SystemException {
+        Clock clock = breaker.getClock();
+        return (T t) -> {
+            CircuitBreaker.Permission permission = breaker.tryAcquirePermission();
+            if (permission == null) {
+                throw breaker.getRejection();
+            }
+            long startedAt = clock.nanoTime();
+            boolean succeeded = false;
+            try {
+                consumer.accept(t);
+                succeeded = true;
+            } catch (Exception e) {
+                throw new SystemException(e);
+            } finally {
+                if (succeeded) {
+                    permission.onSuccess(clock.nanoTime() - startedAt);
+                } else {
+                    permission.onError(clock.nanoTime() - startedAt);
+                }
+            }
+        };
+    }
+
+    /**
+     * Wraps predicate with circuit breaker. While breaker is open predicate is
+     * not invoked and default value is returned, exceptions thrown by
+     * predicate are recorded by breaker and suppressed.
+     *
+     * @param <T> type of argument of predicate
+     * @param breaker protecting predicate
+     * @param defaultValue returned when breaker is open or predicate throws
+     * exception
+     * @param predicate to wrap
+     * @return predicate guarded by breaker
+     */
+    public static <T> Predicate<T> guard(CircuitBreaker breaker, boolean defaultValue, CheckedPredicate<T> predicate) {
+        Clock clock = breaker.getClock();
+        return (T t) -> {
+            CircuitBreaker.Permission permission = breaker.tryAcquirePermission();
+            if (permission == null) {
+                return defaultValue;
+            }
+            long startedAt = clock.nanoTime();
+            boolean succeeded = false;
+            try {
+                boolean result = predicate.test(t);
+                succeeded = true;
+                return result;
+            } catch (Exception ex) {
+                LOGGER.info("Supressed exception, returning default value", ex);
+                if (METRICS.isEnabled()) {
+                    SUPPRESSED.increment();
+                }
+                return defaultValue;
+            } finally {
+                if (succeeded) {
+                    permission.onSuccess(clock.nanoTime() - startedAt);
+                } else {
+                    permission.onError(clock.nanoTime() - startedAt);
+                }
             }
         };
     }
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.limiter;
+
+/**
+ *
+ * @author Mariusz
+ */
+final class AimdStrategy implements LimitStrategy {
+
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final int min;
+
+    private final int max;
+
+    private final long timeoutNanos;
+
+    AimdStrategy(int min, int max, long timeoutNanos) {
+        this.min = min;
+        this.max = max;
+        this.timeoutNanos = timeoutNanos;
+    }
+
+    @Override
+    public double update(double limit, long rttNanos, int inFlight, boolean dropped) {
+        if (dropped || rttNanos > timeoutNanos) {
+            return Math.max(min, limit * BACKOFF_RATIO);
+        }
+        if (inFlight * 2 >= limit) {
+            return Math.min(max, limit + 1);
+        }
+        return limit;
+    }
+}
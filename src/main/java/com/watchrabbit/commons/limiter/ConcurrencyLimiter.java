@@ -0,0 +1,358 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.limiter;
+
+import com.watchrabbit.commons.callback.UncheckedCallable;
+import com.watchrabbit.commons.callback.VoidCallable;
+import com.watchrabbit.commons.clock.Clock;
+import com.watchrabbit.commons.clock.Clocks;
+import com.watchrabbit.commons.exception.SystemException;
+import com.watchrabbit.commons.metrics.Counter;
+import com.watchrabbit.commons.metrics.MetricsRegistry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits number of calls in flight to dependency, and adjusts this limit to
+ * measured round trip times with {@link LimitStrategy}. Calls over limit are
+ * rejected at once instead of being queued, so load is shed before latency of
+ * dependency grows. Only timeouts signal overload of dependency by default,
+ * other failures are not used to adjust limit, see
+ * {@link #withDropOn(Class[])}.
+ *
+ * @author Mariusz
+ */
+public final class ConcurrencyLimiter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConcurrencyLimiter.class);
+
+    private static final MetricsRegistry METRICS = MetricsRegistry.getDefault();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile double limit = 20;
+
+    private LimitStrategy strategy = LimitStrategy.vegas(1, 1000);
+
+    private Clock clock = Clocks.getDefault();
+
+    private List<Class<? extends Throwable>> dropOn = Collections.singletonList(TimeoutException.class);
+
+    private String name = "limiter";
+
+    private String metricPrefix = "limiter.";
+
+    private SystemException rejection;
+
+    private Counter rejected;
+
+    private ConcurrencyLimiter() {
+        this.rejection = SystemException.lightweight("Concurrency limit of " + name + " exceeded", null);
+    }
+
+    /**
+     * Creates limiter starting with limit of twenty calls, adjusted by Vegas
+     * strategy.
+     *
+     * @return new {@code ConcurrencyLimiter}
+     */
+    public static ConcurrencyLimiter create() {
+        return new ConcurrencyLimiter();
+    }
+
+    /**
+     * Strategy adjusting limit, instance can not be shared with other
+     * limiters.
+     *
+     * @param strategy adjusting limit
+     * @return {@code ConcurrencyLimiter} with strategy
+     */
+    public ConcurrencyLimiter withStrategy(LimitStrategy strategy) {
+        this.strategy = strategy;
+        return this;
+    }
+
+    /**
+     * Limit used before first call completes.
+     *
+     * @param limit initial number of calls in flight
+     * @return {@code ConcurrencyLimiter} with initial limit
+     */
+    public ConcurrencyLimiter withInitialLimit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Clock used to measure round trip times.
+     *
+     * @param clock source of monotonic time
+     * @return {@code ConcurrencyLimiter} with clock
+     */
+    public ConcurrencyLimiter withClock(Clock clock) {
+        this.clock = clock;
+        return this;
+    }
+
+    /**
+     * Failures of passed types, or caused by them, signal overload of
+     * dependency and decrease limit. Other failures release permit without
+     * adjusting limit. By default only {@link TimeoutException} is treated as
+     * overload.
+     *
+     * @param types of exceptions signaling overload
+     * @return {@code ConcurrencyLimiter} with overload exceptions
+     */
+    @SafeVarargs
+    public final ConcurrencyLimiter withDropOn(Class<? extends Throwable>... types) {
+        this.dropOn = new ArrayList<>(types.length);
+        for (Class<? extends Throwable> type : types) {
+            dropOn.add(type);
+        }
+        return this;
+    }
+
+    /**
+     * Name used in logs and in name of {@code limiter.<name>.rejected}
+     * metric. Unnamed limiter records {@code limiter.rejected}. Meter is
+     * registered when first value is recorded.
+     *
+     * @param name name of protected dependency
+     * @return {@code ConcurrencyLimiter} with name
+     */
+    public ConcurrencyLimiter withName(String name) {
+        this.name = name;
+        this.rejection = SystemException.lightweight("Concurrency limit of " + name + " exceeded", null);
+        this.metricPrefix = "limiter." + name + ".";
+        this.rejected = null;
+        return this;
+    }
+
+    /**
+     * Invokes callable if limit is not exceeded.
+     *
+     * @param <T> type of returned value
+     * @param callable protected call
+     * @return value returned by callable
+     * @throws SystemException shared instance without stack trace if limit is
+     * exceeded, or wrapping exception thrown by callable
+     */
+    public <T> T call(Callable<T> callable) {
+        Permit permit = acquire();
+        try {
+            T result = callable.call();
+            permit.success();
+            return result;
+        } catch (Exception ex) {
+            permit.failed(ex);
+            throw new SystemException("Call limited by " + name + " throwed exception!", ex);
+        } finally {
+            permit.ignore();
+        }
+    }
+
+    /**
+     * Invokes callable if limit is not exceeded.
+     *
+     * @param <T> type of returned value
+     * @param callable protected call
+     * @return value returned by callable
+     * @throws SystemException shared instance without stack trace if limit is
+     * exceeded
+     */
+    public <T> T get(UncheckedCallable<T> callable) {
+        Permit permit = acquire();
+        try {
+            T result = callable.call();
+            permit.success();
+            return result;
+        } catch (RuntimeException ex) {
+            permit.failed(ex);
+            throw ex;
+        } finally {
+            permit.ignore();
+        }
+    }
+
+    /**
+     * Invokes callable if limit is not exceeded.
+     *
+     * @param callable protected call
+     * @throws SystemException shared instance without stack trace if limit is
+     * exceeded
+     */
+    public void run(VoidCallable callable) {
+        Permit permit = acquire();
+        try {
+            callable.call();
+            permit.success();
+        } catch (RuntimeException ex) {
+            permit.failed(ex);
+            throw ex;
+        } finally {
+            permit.ignore();
+        }
+    }
+
+    /**
+     * Acquires permit for call if limit is not exceeded. Every permit must be
+     * released with one of {@link Permit} methods, asynchronous calls should
+     * release it when they complete. Only first release of permit is
+     * counted.
+     *
+     * @return permit, or {@code null} if limit is exceeded
+     */
+    public Permit tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                if (METRICS.isEnabled()) {
+                    if (rejected == null) {
+                        rejected = METRICS.counter(metricPrefix + "rejected");
+                    }
+                    rejected.increment();
+                }
+                return null;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return new Permit(clock.nanoTime(), current + 1);
+            }
+        }
+    }
+
+    /**
+     * Returns current limit of calls in flight.
+     *
+     * @return limit
+     */
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Returns number of calls in flight.
+     *
+     * @return calls in flight
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private Permit acquire() {
+        Permit permit = tryAcquire();
+        if (permit == null) {
+            throw rejection;
+        }
+        return permit;
+    }
+
+    private boolean isDrop(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            for (Class<? extends Throwable> type : dropOn) {
+                if (type.isInstance(cause)) {
+                    return true;
+                }
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    private synchronized void onSample(long rttNanos, int inFlight, boolean dropped) {
+        double updated = strategy.update(limit, rttNanos, inFlight, dropped);
+        if ((int) updated != (int) limit && LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Limit of {} changed to {}, rtt: {} us", name, (int) updated, TimeUnit.NANOSECONDS.toMicros(rttNanos));
+        }
+        limit = updated;
+    }
+
+    /**
+     * Permit for single call, measuring its round trip time.
+     */
+    public final class Permit {
+
+        private final long startedAt;
+
+        private final int inFlightAtStart;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(long startedAt, int inFlightAtStart) {
+            this.startedAt = startedAt;
+            this.inFlightAtStart = inFlightAtStart;
+        }
+
+        /**
+         * Releases permit of call that succeeded, its round trip time is
+         * used to adjust limit.
+         */
+        public void success() {
+            release(false);
+        }
+
+        /**
+         * Releases permit of call that timed out or was rejected by
+         * dependency, what signals overload of dependency.
+         */
+        public void dropped() {
+            release(true);
+        }
+
+        /**
+         * Releases permit of call that failed, as dropped if failure signals
+         * overload of dependency, see {@link #withDropOn(Class[])}, or
+         * ignored otherwise.
+         *
+         * @param failure exception thrown by call
+         */
+        public void failed(Throwable failure) {
+            if (isDrop(failure)) {
+                dropped();
+            } else {
+                ignore();
+            }
+        }
+
+        /**
+         * Releases permit without adjusting limit, for calls that failed
+         * before reaching dependency or for reasons other than overload.
+         */
+        public void ignore() {
+            if (released.compareAndSet(false, true)) {
+                inFlight.decrementAndGet();
+            }
+        }
+
+        private void release(boolean dropped) {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            long rtt = clock.nanoTime() - startedAt;
+            inFlight.decrementAndGet();
+            onSample(rtt, inFlightAtStart, dropped);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.limiter;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generic cell rate algorithm. Whole state is theoretical arrival time, the
+ * time at which next permit would be issued at sustained rate.
+ *
+ * @author Mariusz
+ */
+final class GcraLimiter extends RateLimiter {
+
+    private final AtomicLong arrival = new AtomicLong();
+
+    private final long interval;
+
+    private final long tolerance;
+
+    GcraLimiter(long interval, long tolerance) {
+        this.interval = interval;
+        this.tolerance = tolerance;
+        reset(clock.nanoTime());
+    }
+
+    @Override
+    long reserve(int permits, long maxWait, long now) {
+        long increment = permits * interval;
+        while (true) {
+            long current = arrival.get();
+            long next = Math.max(current, now) + increment;
+            long wait = Math.max(0, next - interval - tolerance - now);
+            if (wait > maxWait) {
+                return -1;
+            }
+            if (arrival.compareAndSet(current, next)) {
+                return wait;
+            }
+        }
+    }
+
+    @Override
+    void reset(long now) {
+        arrival.set(now);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.limiter;
+
+/**
+ *
+ * @author Mariusz
+ */
+final class GradientStrategy implements LimitStrategy {
+
+    private static final int PROBE_SAMPLES = 1000;
+
+    private static final double SMOOTHING = 0.2;
+
+    private static final double TOLERANCE = 1.5;
+
+    private final int min;
+
+    private final int max;
+
+    private long rttNoLoad;
+
+    private int samples;
+
+    GradientStrategy(int min, int max) {
+        this.min = min;
+        this.max = max;
+    }
+
+    @Override
+    public double update(double limit, long rttNanos, int inFlight, boolean dropped) {
+        if (++samples >= PROBE_SAMPLES) {
+            samples = 0;
+            rttNoLoad = rttNanos;
+        } else if (rttNoLoad == 0 || rttNanos < rttNoLoad) {
+            rttNoLoad = rttNanos;
+        }
+        if (!dropped && inFlight * 2 < limit) {
+            return limit;
+        }
+        double gradient = dropped ? 0.5 : Math.max(0.5, Math.min(1.0, TOLERANCE * rttNoLoad / Math.max(1, rttNanos)));
+        double target = limit * gradient + Math.sqrt(limit);
+        return Math.max(min, Math.min(max, limit * (1 - SMOOTHING) + target * SMOOTHING));
+    }
+}
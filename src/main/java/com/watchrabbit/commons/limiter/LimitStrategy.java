@@ -0,0 +1,83 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.limiter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Algorithm adjusting limit of {@link ConcurrencyLimiter} after every
+ * completed call. Strategies keep statistics of round trip times, so every
+ * limiter needs its own instance. Limiter serializes calls of
+ * {@link #update(double, long, int, boolean)}.
+ *
+ * @author Mariusz
+ */
+public interface LimitStrategy {
+
+    /**
+     * Calculates new limit of calls in flight.
+     *
+     * @param limit current limit
+     * @param rttNanos round trip time of completed call
+     * @param inFlight number of calls in flight when call was started,
+     * including it
+     * @param dropped {@code true} if call failed or timed out
+     * @return new limit
+     */
+    double update(double limit, long rttNanos, int inFlight, boolean dropped);
+
+    /**
+     * Additive increase, multiplicative decrease: limit grows by one after
+     * every successful call made under load, and is multiplied by
+     * {@code 0.9} after call failed or took longer than timeout.
+     *
+     * @param min the minimum limit
+     * @param max the maximum limit
+     * @param timeout round trip time after which call is dropped
+     * @param timeUnit of passed timeout
+     * @return new AIMD {@code LimitStrategy}
+     */
+    static LimitStrategy aimd(int min, int max, long timeout, TimeUnit timeUnit) {
+        return new AimdStrategy(min, max, timeUnit.toNanos(timeout));
+    }
+
+    /**
+     * TCP Vegas: estimates queue in dependency from ratio of minimum round trip
+     * time to current round trip time, and grows limit while queue is short
+     * and shrinks it when queue grows.
+     *
+     * @param min the minimum limit
+     * @param max the maximum limit
+     * @return new Vegas {@code LimitStrategy}
+     */
+    static LimitStrategy vegas(int min, int max) {
+        return new VegasStrategy(min, max);
+    }
+
+    /**
+     * Gradient: multiplies limit by ratio of minimum round trip time to
+     * current round trip time, so limit shrinks when latency rises more than
+     * one and half times above latency without load, and adds square root of
+     * limit as allowed queue. Minimum is probed again every thousand calls.
+     *
+     * @param min the minimum limit
+     * @param max the maximum limit
+     * @return new gradient {@code LimitStrategy}
+     */
+    static LimitStrategy gradient(int min, int max) {
+        return new GradientStrategy(min, max);
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.limiter;
+
+import com.watchrabbit.commons.clock.Clock;
+import com.watchrabbit.commons.clock.Clocks;
+import com.watchrabbit.commons.exception.SystemException;
+import com.watchrabbit.commons.sleep.Sleep;
+import com.watchrabbit.commons.sleep.SleepPoller;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits rate of calls. Limiters update their state with compare and set,
+ * they take no locks and need no background thread, time is read from
+ * {@link Clock} only when permits are acquired. Token bucket and GCRA keep
+ * their whole state in single atomic long and do not allocate, warming up
+ * limiter keeps time of next free permit and fractional stored permits in
+ * immutable object, so it allocates one small object per granted
+ * reservation.
+ *
+ * <p>
+ * Permits that are not available at once can be reserved: blocking and
+ * asynchronous acquire reserve permits and wait until reservation is due,
+ * later callers wait for permits reserved earlier.
+ *
+ * @author Mariusz
+ */
+public abstract class RateLimiter {
+
+    Clock clock = Clocks.getDefault();
+
+    private SleepPoller poller = SleepPoller.getDefault();
+
+    RateLimiter() {
+    }
+
+    /**
+     * Creates token bucket holding at most {@code capacity} tokens, refilled
+     * with {@code permits} tokens every {@code period}. Bucket is full when
+     * created.
+     *
+     * <p>
+     * Token bucket is implemented as GCRA with burst tolerance of
+     * {@code capacity - 1} emission intervals, which admits exactly the same
+     * calls.
+     *
+     * @param capacity the maximum number of tokens, size of burst
+     * @param permits number of tokens added every period
+     * @param period of refill
+     * @param timeUnit of passed period
+     * @return token bucket {@code RateLimiter}
+     */
+    public static RateLimiter tokenBucket(int capacity, int permits, long period, TimeUnit timeUnit) {
+        if (capacity < 1 || permits < 1) {
+            throw new IllegalArgumentException("Capacity and permits must be positive");
+        }
+        long interval = Math.max(1, timeUnit.toNanos(period) / permits);
+        return new GcraLimiter(interval, (capacity - 1) * interval);
+    }
+
+    /**
+     * Creates limiter using generic cell rate algorithm. Every permit moves
+     * theoretical arrival time by emission interval, call conforms if
+     * theoretical arrival time is no more than {@code tolerance} ahead of
+     * current time.
+     *
+     * @param emissionInterval interval between permits at sustained rate
+     * @param tolerance how far calls may run ahead of sustained rate
+     * @param timeUnit of passed interval and tolerance
+     * @return GCRA {@code RateLimiter}
+     */
+    public static RateLimiter gcra(long emissionInterval, long tolerance, TimeUnit timeUnit) {
+        if (emissionInterval < 1 || tolerance < 0) {
+            throw new IllegalArgumentException("Emission interval must be positive and tolerance not negative");
+        }
+        return new GcraLimiter(timeUnit.toNanos(emissionInterval), timeUnit.toNanos(tolerance));
+    }
+
+    /**
+     * Creates limiter issuing {@code permits} every {@code period} when warm.
+     * After being unused limiter cools down and issues permits up to three
+     * times slower, its rate grows to stable rate during {@code warmup}
+     * period of steady use. Protects dependencies which need warm up after
+     * being idle, like caches or connection pools. Limiter is cold when
+     * created.
+     *
+     * @param permits number of permits issued every period when warm
+     * @param period of stable rate
+     * @param timeUnit of passed period
+     * @param warmup time of steady use after which limiter is warm
+     * @param warmupUnit of passed warmup
+     * @return warming up {@code RateLimiter}
+     */
+    public static RateLimiter warmingUp(int permits, long period, TimeUnit timeUnit, long warmup, TimeUnit warmupUnit) {
+        if (permits < 1 || warmup <= 0) {
+            throw new IllegalArgumentException("Permits and warmup must be positive");
+        }
+        return new WarmingUpLimiter(timeUnit.toNanos(period) / (double) permits, warmupUnit.toNanos(warmup));
+    }
+
+    /**
+     * Clock used to measure rate, limiter is reset to its initial state.
+     *
+     * @param clock source of monotonic time
+     * @return {@code RateLimiter} with clock
+     */
+    public RateLimiter withClock(Clock clock) {
+        this.clock = clock;
+        reset(clock.nanoTime());
+        return this;
+    }
+
+    /**
+     * Poller used to complete futures returned by
+     * {@link #acquireAsync(int)}.
+     *
+     * @param poller scheduling completion of futures
+     * @return {@code RateLimiter} with poller
+     */
+    public RateLimiter withPoller(SleepPoller poller) {
+        this.poller = poller;
+        return this;
+    }
+
+    /**
+     * Acquires permit if it is available at once.
+     *
+     * @return {@code true} if permit was acquired
+     */
+    public boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+
+    /**
+     * Acquires permits if they are available at once.
+     *
+     * @param permits number of permits
+     * @return {@code true} if permits were acquired
+     */
+    public boolean tryAcquire(int permits) {
+        return reserve(permits, 0, clock.nanoTime()) == 0;
+    }
+
+    /**
+     * Acquires permits if they are available within timeout, waiting for
+     * them if necessary. Permits are not reserved if timeout is too short.
+     *
+     * @param permits number of permits
+     * @param timeout the maximum time to wait
+     * @param timeUnit of passed timeout
+     * @return {@code true} if permits were acquired
+     * @throws SystemException shared {@link SystemException#INTERRUPTED} if
+     * thread was interrupted, reserved permits are not returned
+     */
+    public boolean tryAcquire(int permits, long timeout, TimeUnit timeUnit) {
+        long now = clock.nanoTime();
+        long wait = reserve(permits, timeUnit.toNanos(timeout), now);
+        if (wait < 0) {
+            return false;
+        }
+        await(now + wait);
+        return true;
+    }
+
+    /**
+     * Acquires permit, waiting for it if necessary.
+     *
+     * @return time spent waiting in nanoseconds
+     * @throws SystemException shared {@link SystemException#INTERRUPTED} if
+     * thread was interrupted
+     */
+    public long acquire() {
+        return acquire(1);
+    }
+
+    /**
+     * Acquires permits, waiting for them if necessary.
+     *
+     * @param permits number of permits
+     * @return time spent waiting in nanoseconds
+     * @throws SystemException shared {@link SystemException#INTERRUPTED} if
+     * thread was interrupted, reserved permits are not returned
+     */
+    public long acquire(int permits) {
+        long now = clock.nanoTime();
+        long wait = reserve(permits, Long.MAX_VALUE, now);
+        await(now + wait);
+        return wait;
+    }
+
+    /**
+     * Reserves permits and returns future completed when reservation is due.
+     * No thread is blocked while waiting, future is completed by timer of
+     * poller. Cancelling future does not return reserved permits.
+     *
+     * @param permits number of permits
+     * @return future completed when permits are acquired
+     */
+    public CompletableFuture<Void> acquireAsync(int permits) {
+        long wait = reserve(permits, Long.MAX_VALUE, clock.nanoTime());
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (wait == 0) {
+            future.complete(null);
+        } else {
+            poller.schedule(() -> future.complete(null), wait, TimeUnit.NANOSECONDS, clock);
+        }
+        return future;
+    }
+
+    /**
+     * Reserves permits if they are available within {@code maxWait}.
+     *
+     * @param permits number of permits
+     * @param maxWait the maximum time in nanoseconds caller can wait
+     * @param now current {@code clock.nanoTime()}
+     * @return time in nanoseconds after which permits are available, or
+     * {@code -1} if permits were not reserved
+     */
+    abstract long reserve(int permits, long maxWait, long now);
+
+    /**
+     * Moves limiter to its initial state.
+     *
+     * @param now current {@code clock.nanoTime()}
+     */
+    abstract void reset(long now);
+
+    private void await(long deadline) {
+        if (!Sleep.sleepUntil(deadline, clock)) {
+            throw SystemException.INTERRUPTED;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.limiter;
+
+/**
+ *
+ * @author Mariusz
+ */
+final class VegasStrategy implements LimitStrategy {
+
+    private static final int PROBE_SAMPLES = 1000;
+
+    private final int min;
+
+    private final int max;
+
+    private long rttNoLoad;
+
+    private int samples;
+
+    VegasStrategy(int min, int max) {
+        this.min = min;
+        this.max = max;
+    }
+
+    @Override
+    public double update(double limit, long rttNanos, int inFlight, boolean dropped) {
+        if (++samples >= PROBE_SAMPLES) {
+            samples = 0;
+            rttNoLoad = rttNanos;
+        } else if (rttNoLoad == 0 || rttNanos < rttNoLoad) {
+            rttNoLoad = rttNanos;
+        }
+        double step = Math.max(1, Math.log10(limit));
+        if (dropped) {
+            return Math.max(min, limit - step);
+        }
+        if (inFlight * 2 < limit) {
+            return limit;
+        }
+        double queue = Math.ceil(limit * (1 - (double) rttNoLoad / Math.max(1, rttNanos)));
+        if (queue <= step) {
+            return Math.min(max, limit + 6 * step);
+        } else if (queue < 3 * step) {
+            return Math.min(max, limit + step);
+        } else if (queue > 6 * step) {
+            return Math.max(min, limit - step);
+        }
+        return limit;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.limiter;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Limiter that stores permits while unused and issues stored permits slower
+ * than fresh ones. Interval of stored permits above threshold grows linearly
+ * up to three times stable interval, so cold limiter speeds up to stable rate
+ * during warm up period.
+ *
+ * <p>
+ * Time of next free permit in nanoseconds and stored permits in real units
+ * are kept in immutable state replaced with compare and set, so limiter is
+ * lock free and exact for any rate and warm up period, at cost of one small
+ * allocation per granted reservation. Refused reservations do not allocate.
+ *
+ * @author Mariusz
+ */
+final class WarmingUpLimiter extends RateLimiter {
+
+    private static final double COLD_FACTOR = 3.0;
+
+    private final AtomicReference<State> state = new AtomicReference<>();
+
+    private final double stableInterval;
+
+    private final double thresholdPermits;
+
+    private final double maxPermits;
+
+    private final double slope;
+
+    private final double coolDownInterval;
+
+    WarmingUpLimiter(double stableInterval, long warmupNanos) {
+        double coldInterval = stableInterval * COLD_FACTOR;
+        this.stableInterval = stableInterval;
+        this.thresholdPermits = 0.5 * warmupNanos / stableInterval;
+        this.maxPermits = thresholdPermits + 2.0 * warmupNanos / (stableInterval + coldInterval);
+        this.slope = (coldInterval - stableInterval) / (maxPermits - thresholdPermits);
+        this.coolDownInterval = warmupNanos / maxPermits;
+        reset(clock.nanoTime());
+    }
+
+    @Override
+    long reserve(int permits, long maxWait, long now) {
+        while (true) {
+            State current = state.get();
+            long nextFree = current.nextFree;
+            double stored = current.stored;
+            if (now - nextFree > 0) {
+                stored = Math.min(maxPermits, stored + (now - nextFree) / coolDownInterval);
+                nextFree = now;
+            }
+            long wait = nextFree - now;
+            if (wait > maxWait) {
+                return -1;
+            }
+            double spent = Math.min(permits, stored);
+            double cost = storedPermitsToWait(stored, spent) + (permits - spent) * stableInterval;
+            if (state.compareAndSet(current, new State(nextFree + Math.round(cost), stored - spent))) {
+                return wait;
+            }
+        }
+    }
+
+    @Override
+    void reset(long now) {
+        state.set(new State(now, maxPermits));
+    }
+
+    private double storedPermitsToWait(double stored, double spent) {
+        double aboveThreshold = stored - thresholdPermits;
+        double wait = 0;
+        if (aboveThreshold > 0) {
+            double spentAboveThreshold = Math.min(aboveThreshold, spent);
+            wait = spentAboveThreshold * (permitsToInterval(aboveThreshold) + permitsToInterval(aboveThreshold - spentAboveThreshold)) / 2;
+            spent -= spentAboveThreshold;
+        }
+        return wait + spent * stableInterval;
+    }
+
+    private double permitsToInterval(double permits) {
+        return stableInterval + permits * slope;
+    }
+
+    private static final class State {
+
+        private final long nextFree;
+
+        private final double stored;
+
+        private State(long nextFree, double stored) {
+            this.nextFree = nextFree;
+            this.stored = stored;
+        }
+    }
+}
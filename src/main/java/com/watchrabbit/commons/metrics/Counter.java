@@ -0,0 +1,73 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic counter striped with {@code LongAdder}, so many threads can
+ * increment it without contention.
+ *
+ * @author Mariusz
+ */
+public final class Counter {
+
+    private final String name;
+
+    private final LongAdder count = new LongAdder();
+
+    Counter(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Adds one to this counter.
+     */
+    public void increment() {
+        count.increment();
+    }
+
+    /**
+     * Adds value to this counter.
+     *
+     * @param value to add
+     */
+    public void add(long value) {
+        count.add(value);
+    }
+
+    /**
+     * Returns current value of this counter.
+     *
+     * @return sum of added values
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns name of this counter.
+     *
+     * @return name
+     */
+    public String getName() {
+        return name;
+    }
+
+    void reset() {
+        count.reset();
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.metrics;
+
+import com.watchrabbit.commons.clock.Histogram;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of named {@link Counter}'s and {@link Timer}'s. Library records
+ * its metrics in {@link #getDefault()} registry:
+ *
+ * <ul>
+ * <li>{@code sleep.<name>.polls}, {@code sleep.<name>.timeouts},
+ * {@code sleep.<name>.interruptions} counters and {@code sleep.<name>.wait}
+ * timer of every sleeper, where name is set by
+ * {@code SleepBuilder.withName},
+ * <li>{@code future.resolved}, {@code future.failed},
+ * {@code future.timeouts} counters and {@code future.resolve} timer of
+ * {@code FutureContext} and {@code FutureScope},
+ * <li>{@code throwables.suppressed} counter of exceptions suppressed by
+ * {@code Throwables.suppress},
+ * <li>{@code retry.<name>.retries} and {@code retry.<name>.failures}
+ * counters of {@code Retry},
+ * <li>{@code breaker.<name>.rejected} and {@code breaker.<name>.opened}
+ * counters of {@code CircuitBreaker},
+ * <li>{@code limiter.<name>.rejected} counter of
+ * {@code ConcurrencyLimiter},
+ * <li>{@code hedge.<name>.hedges} and {@code hedge.<name>.wins} counters
+ * of {@code Hedge}.
+ * </ul>
+ *
+ * Code measured with {@code Stopwatch} records its times in any timer of
+ * registry passed to {@code Stopwatch.withTimer}.
+ *
+ * Recording is disabled by default, instrumented code checks
+ * {@link #isEnabled()} before it touches any meter, so disabled metrics cost
+ * one volatile read. Meters are exported by pulling
+ * {@link #getCounters()} and {@link #getTimers()}.
+ *
+ * @author Mariusz
+ */
+public final class MetricsRegistry {
+
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    private volatile boolean enabled;
+
+    private MetricsRegistry() {
+    }
+
+    /**
+     * Returns registry used by the library.
+     *
+     * @return default {@code MetricsRegistry}
+     */
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Creates new registry, independent of default one.
+     *
+     * @return new {@code MetricsRegistry}
+     */
+    public static MetricsRegistry create() {
+        return new MetricsRegistry();
+    }
+
+    /**
+     * Returns {@code true} if metrics should be recorded.
+     *
+     * @return {@code true} if registry is enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables recording of metrics.
+     *
+     * @param enabled {@code true} to record metrics
+     * @return this registry
+     */
+    public MetricsRegistry setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        return this;
+    }
+
+    /**
+     * Returns counter with given name, counter is created on first use.
+     *
+     * @param name of counter
+     * @return {@code Counter} with given name
+     */
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, Counter::new);
+    }
+
+    /**
+     * Returns timer with given name, timer is created on first use.
+     *
+     * @param name of timer
+     * @return {@code Timer} with given name
+     */
+    public Timer timer(String name) {
+        return timers.computeIfAbsent(name, Timer::new);
+    }
+
+    /**
+     * Returns current values of all counters sorted by name.
+     *
+     * @return values of counters by name
+     */
+    public SortedMap<String, Long> getCounters() {
+        SortedMap<String, Long> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.getCount()));
+        return values;
+    }
+
+    /**
+     * Returns snapshots of all timers sorted by name, durations are in
+     * nanoseconds.
+     *
+     * @return snapshots of timers by name
+     */
+    public SortedMap<String, Histogram.Snapshot> getTimers() {
+        SortedMap<String, Histogram.Snapshot> values = new TreeMap<>();
+        timers.forEach((name, timer) -> values.put(name, timer.snapshot()));
+        return values;
+    }
+
+    /**
+     * Clears values of all meters. Meters stay registered, so references held
+     * by instrumented code stay valid.
+     */
+    public void reset() {
+        counters.values().forEach(Counter::reset);
+        timers.values().forEach(Timer::reset);
+    }
+}
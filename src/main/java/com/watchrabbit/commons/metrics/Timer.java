@@ -0,0 +1,77 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.metrics;
+
+import com.watchrabbit.commons.clock.Histogram;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Distribution of durations, recorded in nanoseconds in lock free
+ * {@link Histogram}.
+ *
+ * @author Mariusz
+ */
+public final class Timer {
+
+    private final String name;
+
+    private final Histogram histogram = Histogram.create();
+
+    Timer(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records duration in nanoseconds.
+     *
+     * @param nanos duration to record
+     */
+    public void record(long nanos) {
+        histogram.record(nanos);
+    }
+
+    /**
+     * Records duration.
+     *
+     * @param duration to record
+     * @param timeUnit of passed duration
+     */
+    public void record(long duration, TimeUnit timeUnit) {
+        histogram.record(timeUnit.toNanos(duration));
+    }
+
+    /**
+     * Returns copy of recorded durations in nanoseconds.
+     *
+     * @return {@code Snapshot} of recorded durations
+     */
+    public Histogram.Snapshot snapshot() {
+        return histogram.snapshot();
+    }
+
+    /**
+     * Returns name of this timer.
+     *
+     * @return name
+     */
+    public String getName() {
+        return name;
+    }
+
+    void reset() {
+        histogram.reset();
+    }
+}
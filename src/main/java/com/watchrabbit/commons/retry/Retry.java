@@ -0,0 +1,436 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.retry;
+
+import com.watchrabbit.commons.callback.BooleanPredicate;
+import com.watchrabbit.commons.callback.CheckedConsumer;
+import com.watchrabbit.commons.callback.UncheckedCallable;
+import com.watchrabbit.commons.clock.Clock;
+import com.watchrabbit.commons.clock.Clocks;
+import com.watchrabbit.commons.exception.SystemException;
+import com.watchrabbit.commons.metrics.Counter;
+import com.watchrabbit.commons.metrics.MetricsRegistry;
+import com.watchrabbit.commons.sleep.BackoffStrategy;
+import com.watchrabbit.commons.sleep.SleepPoller;
+import com.watchrabbit.commons.sleep.TimerWheel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Invokes call again when it throws retryable exception. Intervals between
+ * attempts are calculated by {@link BackoffStrategy}, decorrelated jitter by
+ * default, so clients failing at the same time do not retry at the same time.
+ * Retries stop when maximum number of attempts is reached, when next attempt
+ * would start after deadline of whole call, or when {@link RetryBudget} is
+ * exhausted.
+ *
+ * <p>
+ * Configured {@code Retry} is thread safe and should be shared by all calls to
+ * the same dependency. Failures are propagated as {@code SystemException}
+ * caused by exception thrown by last attempt.
+ *
+ * @author Mariusz
+ */
+public final class Retry {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Retry.class);
+
+    private static final MetricsRegistry METRICS = MetricsRegistry.getDefault();
+
+    private static final BackoffStrategy DEFAULT_BACKOFF = BackoffStrategy.decorrelatedJitter(50, 5000, TimeUnit.MILLISECONDS);
+
+    private int maxAttempts = 3;
+
+    private BackoffStrategy backoff = DEFAULT_BACKOFF;
+
+    private long timeout = Long.MAX_VALUE;
+
+    private BooleanPredicate<Throwable> classifier = failure -> true;
+
+    private List<Class<? extends Throwable>> retryOn;
+
+    private List<Class<? extends Throwable>> abortOn;
+
+    private RetryBudget budget;
+
+    private SleepPoller poller = SleepPoller.getDefault();
+
+    private Clock clock = Clocks.getDefault();
+
+    private String name = "retry";
+
+    private String metricPrefix = "retry.";
+
+    private Counter retries;
+
+    private Counter failures;
+
+    private Retry() {
+    }
+
+    /**
+     * Creates {@code Retry} making at most three attempts.
+     *
+     * @return new {@code Retry}
+     */
+    public static Retry create() {
+        return new Retry();
+    }
+
+    /**
+     * Maximum number of attempts, including first one.
+     *
+     * @param maxAttempts the maximum number of attempts
+     * @return {@code Retry} with maximum attempts
+     */
+    public Retry withMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("At least one attempt is required");
+        }
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    /**
+     * Strategy used to calculate interval between attempts.
+     *
+     * @param backoff strategy of intervals
+     * @return {@code Retry} with backoff
+     */
+    public Retry withBackoff(BackoffStrategy backoff) {
+        this.backoff = backoff;
+        return this;
+    }
+
+    /**
+     * Deadline of whole call, measured from first attempt. Attempt that would
+     * start after deadline is not made.
+     *
+     * @param timeout of whole call
+     * @param timeUnit of passed timeout
+     * @return {@code Retry} with deadline
+     */
+    public Retry withDeadline(long timeout, TimeUnit timeUnit) {
+        this.timeout = timeUnit.toNanos(timeout);
+        return this;
+    }
+
+    /**
+     * Retries only exceptions of passed types, or exceptions caused by them.
+     * By default every exception is retried.
+     *
+     * @param types of retryable exceptions
+     * @return {@code Retry} with retryable exceptions
+     */
+    @SafeVarargs
+    public final Retry withRetryOn(Class<? extends Throwable>... types) {
+        this.retryOn = new ArrayList<>(types.length);
+        for (Class<? extends Throwable> type : types) {
+            retryOn.add(type);
+        }
+        return this;
+    }
+
+    /**
+     * Never retries exceptions of passed types, or exceptions caused by them.
+     * Takes precedence over {@link #withRetryOn(Class[])}.
+     *
+     * @param types of fatal exceptions
+     * @return {@code Retry} with fatal exceptions
+     */
+    @SafeVarargs
+    public final Retry withAbortOn(Class<? extends Throwable>... types) {
+        this.abortOn = new ArrayList<>(types.length);
+        for (Class<? extends Throwable> type : types) {
+            abortOn.add(type);
+        }
+        return this;
+    }
+
+    /**
+     * Classifier deciding if exception, that passed type checks, is
+     * retryable.
+     *
+     * @param classifier returning {@code true} for retryable exceptions
+     * @return {@code Retry} with classifier
+     */
+    public Retry withClassifier(BooleanPredicate<Throwable> classifier) {
+        this.classifier = classifier;
+        return this;
+    }
+
+    /**
+     * Budget shared with other {@code Retry}'s calling the same dependency.
+     *
+     * @param budget limiting retries
+     * @return {@code Retry} with budget
+     */
+    public Retry withBudget(RetryBudget budget) {
+        this.budget = budget;
+        return this;
+    }
+
+    /**
+     * Poller used to invoke and schedule asynchronous attempts.
+     *
+     * @param poller running attempts of {@link #callAsync(Callable)}
+     * @return {@code Retry} with poller
+     */
+    public Retry withPoller(SleepPoller poller) {
+        this.poller = poller;
+        return this;
+    }
+
+    /**
+     * Clock used to measure deadline and intervals.
+     *
+     * @param clock source of monotonic time
+     * @return {@code Retry} with clock
+     */
+    public Retry withClock(Clock clock) {
+        this.clock = clock;
+        return this;
+    }
+
+    /**
+     * Name used in logs and in names of metrics:
+     * {@code retry.<name>.retries} and {@code retry.<name>.failures}.
+     * Unnamed {@code Retry} records {@code retry.retries} and
+     * {@code retry.failures}. Meters are registered when first value is
+     * recorded.
+     *
+     * @param name name of retried call
+     * @return {@code Retry} with name
+     */
+    public Retry withName(String name) {
+        this.name = name;
+        this.metricPrefix = "retry." + name + ".";
+        this.retries = null;
+        this.failures = null;
+        return this;
+    }
+
+    /**
+     * Invokes callable until it returns value or retries stop.
+     *
+     * @param <T> type of returned value
+     * @param callable invoked call
+     * @return value returned by callable
+     * @throws SystemException if retries stop, interrupt status is restored if
+     * thread was interrupted
+     */
+    public <T> T call(Callable<T> callable) {
+        long startedAt = clock.nanoTime();
+        if (budget != null) {
+            budget.onCall();
+        }
+        long interval = 0;
+        for (int attempt = 1;; attempt++) {
+            try {
+                return callable.call();
+            } catch (Exception ex) {
+                interval = backoff.nextInterval(attempt, interval);
+                SystemException refused = refuse(ex, attempt, interval, startedAt);
+                if (refused != null) {
+                    throw refused;
+                }
+                if (!sleep(interval)) {
+                    throw new SystemException("Interrupted while retrying " + name, ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Invokes callable until it returns value or retries stop.
+     *
+     * @param <T> type of returned value
+     * @param callable invoked call
+     * @return value returned by callable
+     * @throws SystemException if retries stop
+     */
+    public <T> T get(UncheckedCallable<T> callable) {
+        return call(callable::call);
+    }
+
+    /**
+     * Wraps consumer, so every argument is consumed with retries.
+     *
+     * @param <T> type of consumed argument
+     * @param consumer invoked consumer
+     * @return consumer with retries
+     */
+    public <T> Consumer<T> consumer(CheckedConsumer<T> consumer) {
+        return (T t) -> call(() -> {
+            consumer.accept(t);
+            return null;
+        });
+    }
+
+    /**
+     * Invokes callable on executor of poller, retries are scheduled on timer
+     * of poller, so no thread is blocked between attempts. Cancelling
+     * returned future stops retries.
+     *
+     * @param <T> type of returned value
+     * @param callable invoked call
+     * @return future completed with value returned by callable, or
+     * exceptionally with {@code SystemException} if retries stop
+     */
+    public <T> CompletableFuture<T> callAsync(Callable<T> callable) {
+        AsyncCall<T> call = new AsyncCall<>(callable);
+        poller.execute(call);
+        return call.future;
+    }
+
+    private boolean isRetryable(Exception ex) {
+        if (ex instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        if (abortOn != null && matches(ex, abortOn)) {
+            return false;
+        }
+        if (retryOn != null && !matches(ex, retryOn)) {
+            return false;
+        }
+        return classifier.test(ex);
+    }
+
+    private Counter retries() {
+        if (retries == null) {
+            retries = METRICS.counter(metricPrefix + "retries");
+        }
+        return retries;
+    }
+
+    private Counter failures() {
+        if (failures == null) {
+            failures = METRICS.counter(metricPrefix + "failures");
+        }
+        return failures;
+    }
+
+    private static boolean matches(Throwable failure, List<Class<? extends Throwable>> types) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            for (Class<? extends Throwable> type : types) {
+                if (type.isInstance(cause)) {
+                    return true;
+                }
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    private SystemException refuse(Exception ex, int attempt, long interval, long startedAt) {
+        SystemException refused = null;
+        if (!isRetryable(ex)) {
+            refused = new SystemException("Call on " + name + " failed with non retryable exception", ex);
+        } else if (attempt >= maxAttempts) {
+            refused = new SystemException("Call on " + name + " failed after " + attempt + " attempts", ex);
+        } else if (clock.nanoTime() - startedAt + interval > timeout) {
+            refused = new SystemException("Deadline of " + name + " exceeded after " + attempt + " attempts", ex);
+        } else if (budget != null && !budget.tryRetry()) {
+            refused = new SystemException("Retry budget of " + name + " exhausted after " + attempt + " attempts", ex);
+        }
+        boolean measured = METRICS.isEnabled();
+        if (refused != null) {
+            if (measured) {
+                failures().increment();
+            }
+            return refused;
+        }
+        if (measured) {
+            retries().increment();
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Retrying {} in {} ns after: {}", name, interval, ex.toString());
+        }
+        return null;
+    }
+
+    private boolean sleep(long interval) {
+        long wakeUpAt = clock.nanoTime() + interval;
+        while (wakeUpAt - clock.nanoTime() > 0) {
+            clock.parkUntil(this, wakeUpAt);
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private final class AsyncCall<T> implements Runnable {
+
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        private final Callable<T> callable;
+
+        private final long startedAt;
+
+        private int attempt;
+
+        private long interval;
+
+        private volatile TimerWheel.Timeout timeout;
+
+        private AsyncCall(Callable<T> callable) {
+            this.callable = callable;
+            this.startedAt = clock.nanoTime();
+            if (budget != null) {
+                budget.onCall();
+            }
+            future.whenComplete((result, ex) -> {
+                TimerWheel.Timeout scheduled = timeout;
+                if (scheduled != null) {
+                    scheduled.cancel();
+                }
+            });
+        }
+
+        @Override
+        public void run() {
+            if (future.isDone()) {
+                return;
+            }
+            attempt++;
+            try {
+                future.complete(callable.call());
+            } catch (Exception ex) {
+                interval = backoff.nextInterval(attempt, interval);
+                SystemException refused = refuse(ex, attempt, interval, startedAt);
+                if (refused != null) {
+                    future.completeExceptionally(refused);
+                    return;
+                }
+                timeout = poller.schedule(this, interval, TimeUnit.NANOSECONDS, clock);
+                if (future.isDone()) {
+                    timeout.cancel();
+                }
+            }
+        }
+    }
+}
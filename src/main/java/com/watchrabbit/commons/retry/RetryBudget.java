@@ -0,0 +1,158 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.retry;
+
+import com.watchrabbit.commons.clock.Clock;
+import com.watchrabbit.commons.clock.Clocks;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits retries to a percentage of calls made in recent window, so retries
+ * can not multiply load of degraded dependency. Every call deposits
+ * {@code ratio} of retry, every retry withdraws one. Some retries per window
+ * are always allowed, so rarely used dependencies can be retried too.
+ *
+ * <p>
+ * Window is split into ten slots of striped counters, budget is approximate
+ * under contention. Single budget is meant to be shared by all retries of
+ * calls to the same dependency.
+ *
+ * @author Mariusz
+ */
+public final class RetryBudget {
+
+    private static final int SLOTS = 10;
+
+    private final Slot[] slots = new Slot[SLOTS];
+
+    private final double ratio;
+
+    private long slotNanos = TimeUnit.SECONDS.toNanos(1);
+
+    private long minRetries = 10;
+
+    private Clock clock = Clocks.getDefault();
+
+    private RetryBudget(double ratio) {
+        if (ratio < 0) {
+            throw new IllegalArgumentException("Ratio can't be negative");
+        }
+        this.ratio = ratio;
+        for (int i = 0; i < SLOTS; i++) {
+            slots[i] = new Slot();
+        }
+    }
+
+    /**
+     * Creates budget allowing retries of {@code ratio} of calls made in last
+     * ten seconds, and ten retries in this window regardless of calls.
+     *
+     * @param ratio of retries to calls, {@code 0.1} allows one retry per ten
+     * calls
+     * @return new {@code RetryBudget}
+     */
+    public static RetryBudget create(double ratio) {
+        return new RetryBudget(ratio);
+    }
+
+    /**
+     * Length of window in which calls and retries are counted.
+     *
+     * @param window length of window
+     * @param timeUnit of passed window
+     * @return {@code RetryBudget} with window
+     */
+    public RetryBudget withWindow(long window, TimeUnit timeUnit) {
+        this.slotNanos = Math.max(1, timeUnit.toNanos(window) / SLOTS);
+        return this;
+    }
+
+    /**
+     * Number of retries allowed in window regardless of calls.
+     *
+     * @param minRetries allowed in window
+     * @return {@code RetryBudget} with minimum retries
+     */
+    public RetryBudget withMinRetries(int minRetries) {
+        this.minRetries = minRetries;
+        return this;
+    }
+
+    /**
+     * Clock used to measure window.
+     *
+     * @param clock source of monotonic time
+     * @return {@code RetryBudget} with clock
+     */
+    public RetryBudget withClock(Clock clock) {
+        this.clock = clock;
+        return this;
+    }
+
+    /**
+     * Records call, which deposits {@code ratio} of retry in budget.
+     */
+    public void onCall() {
+        slot(Math.floorDiv(clock.nanoTime(), slotNanos)).calls.increment();
+    }
+
+    /**
+     * Withdraws retry from budget.
+     *
+     * @return {@code true} if retry is allowed, {@code false} if budget is
+     * exhausted
+     */
+    public boolean tryRetry() {
+        long epoch = Math.floorDiv(clock.nanoTime(), slotNanos);
+        long calls = 0;
+        long retries = 0;
+        for (Slot slot : slots) {
+            if (epoch - slot.epoch < SLOTS) {
+                calls += slot.calls.sum();
+                retries += slot.retries.sum();
+            }
+        }
+        if (retries >= minRetries + (long) (calls * ratio)) {
+            return false;
+        }
+        slot(epoch).retries.increment();
+        return true;
+    }
+
+    private Slot slot(long epoch) {
+        Slot slot = slots[(int) Math.floorMod(epoch, (long) SLOTS)];
+        if (slot.epoch < epoch) {
+            synchronized (slot) {
+                if (slot.epoch < epoch) {
+                    slot.calls.reset();
+                    slot.retries.reset();
+                    slot.epoch = epoch;
+                }
+            }
+        }
+        return slot;
+    }
+
+    private static final class Slot {
+
+        private volatile long epoch = Long.MIN_VALUE / 2;
+
+        private final LongAdder calls = new LongAdder();
+
+        private final LongAdder retries = new LongAdder();
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.sleep;
+
+import com.watchrabbit.commons.callback.BooleanPredicate;
+import com.watchrabbit.commons.clock.Clock;
+import com.watchrabbit.commons.exception.SystemException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Single asynchronous wait. Every run invokes statement once and either
+ * completes the future or reschedules itself on the poller.
+ *
+ * @author Mariusz
+ */
+class AsyncSleeper<T> implements SleepPoller.Abortable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncSleeper.class);
+
+    private final SleepPoller poller;
+
+    private final Callable<T> statement;
+
+    private final BooleanPredicate<T> comparer;
+
+    private final BackoffStrategy backoff;
+
+    private final Clock clock;
+
+    private final SleepSignal signal;
+
+    private final Runnable wakeUp = this::wakeUp;
+
+    private final long deadline;
+
+    private final String name;
+
+    private final boolean lightweight;
+
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+
+    private volatile TimerWheel.Timeout timeout;
+
+    private int attempt;
+
+    private int polls;
+
+    private boolean timedOut;
+
+    private long interval;
+
+    AsyncSleeper(SleepPoller poller, Clock clock, Callable<T> statement, BooleanPredicate<T> comparer, BackoffStrategy backoff, SleepSignal signal, long timeoutNanos, String name, boolean lightweight) {
+        this.poller = poller;
+        this.clock = clock;
+        this.statement = statement;
+        this.comparer = comparer;
+        this.backoff = backoff;
+        this.signal = signal;
+        long startedAt = clock.nanoTime();
+        this.deadline = startedAt + timeoutNanos;
+        this.name = name;
+        this.lightweight = lightweight;
+        boolean measured = SleepMeters.METRICS.isEnabled();
+        this.future.whenComplete((result, ex) -> {
+            if (measured) {
+                SleepMeters.forName(name).record(polls, clock.nanoTime() - startedAt, timedOut, false);
+            }
+            TimerWheel.Timeout current = timeout;
+            if (current != null) {
+                current.cancel();
+            }
+            if (signal != null) {
+                signal.removeListener(wakeUp);
+            }
+        });
+    }
+
+    CompletableFuture<T> future() {
+        return future;
+    }
+
+    CompletableFuture<T> start() {
+        if (signal != null) {
+            signal.addListener(wakeUp);
+        }
+        poller.execute(this);
+        return future;
+    }
+
+    @Override
+    public void run() {
+        if (future.isDone()) {
+            return;
+        }
+        T result;
+        try {
+            long generation = getGeneration();
+            result = statement.call();
+            polls++;
+            long remaining = deadline - clock.nanoTime();
+            boolean sleeping = comparer.test(result);
+            if (sleeping && 0 < remaining) {
+                interval = backoff.nextInterval(++attempt, interval);
+                LOGGER.debug("Sleeping on: {}", name);
+                timeout = poller.schedule(this, Math.min(interval, remaining), clock);
+                if (future.isDone()) {
+                    timeout.cancel();
+                } else if (getGeneration() != generation) {
+                    wakeUp();
+                }
+                return;
+            }
+            timedOut = sleeping;
+        } catch (Exception ex) {
+            future.completeExceptionally(SleepBuilder.failure(name, ex, lightweight));
+            return;
+        }
+        future.complete(result);
+    }
+
+    @Override
+    public void abort(Exception cause) {
+        future.completeExceptionally(new SystemException("Poller was shut down before sleeper: " + name + " completed", cause));
+    }
+
+    private long getGeneration() {
+        return signal == null ? 0 : signal.getGeneration();
+    }
+
+    private void wakeUp() {
+        TimerWheel.Timeout current = timeout;
+        if (current != null && current.cancel()) {
+            poller.execute(this);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.sleep;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Strategy used by {@code SleepBuilder} to calculate interval between
+ * invocations of statement. Implementations should be stateless, so single
+ * instance can be shared by many sleepers.
+ *
+ * @author Mariusz
+ */
+@FunctionalInterface
+public interface BackoffStrategy {
+
+    /**
+     * Calculates interval to sleep before next invocation of statement.
+     *
+     * @param attempt number of invocations of statement performed so far,
+     * starting from {@code 1}
+     * @param previousInterval interval in nanoseconds returned for previous
+     * attempt, {@code 0} for first attempt
+     * @return interval in nanoseconds
+     */
+    long nextInterval(int attempt, long previousInterval);
+
+    /**
+     * Sleeps always for the same interval.
+     *
+     * @param interval used between invocations of statement
+     * @param timeUnit of passed interval
+     * @return fixed {@code BackoffStrategy}
+     */
+    static BackoffStrategy fixed(long interval, TimeUnit timeUnit) {
+        long nanos = timeUnit.toNanos(interval);
+        return (attempt, previousInterval) -> nanos;
+    }
+
+    /**
+     * Doubles interval after every attempt, starting from {@code initial} up
+     * to {@code max}.
+     *
+     * @param initial interval used after first attempt
+     * @param max the maximum interval
+     * @param timeUnit of passed intervals
+     * @return exponential {@code BackoffStrategy}
+     */
+    static BackoffStrategy exponential(long initial, long max, TimeUnit timeUnit) {
+        return exponential(initial, 2.0, max, timeUnit);
+    }
+
+    /**
+     * Multiplies interval by {@code multiplier} after every attempt, starting
+     * from {@code initial} up to {@code max}.
+     *
+     * @param initial interval used after first attempt
+     * @param multiplier used to grow interval, must be at least {@code 1}
+     * @param max the maximum interval
+     * @param timeUnit of passed intervals
+     * @return exponential {@code BackoffStrategy}
+     */
+    static BackoffStrategy exponential(long initial, double multiplier, long max, TimeUnit timeUnit) {
+        if (multiplier < 1) {
+            throw new IllegalArgumentException("Multiplier must be at least 1");
+        }
+        long initialNanos = timeUnit.toNanos(initial);
+        long maxNanos = timeUnit.toNanos(max);
+        return (attempt, previousInterval) -> {
+            if (previousInterval <= 0) {
+                return Math.min(initialNanos, maxNanos);
+            }
+            return (long) Math.min(maxNanos, previousInterval * multiplier);
+        };
+    }
+
+    /**
+     * Decorrelated jitter: every interval is random value between
+     * {@code base} and three times previous interval, but not greater than
+     * {@code max}. Spreads invocations of many sleepers waiting for the same
+     * resource.
+     *
+     * @param base the minimum interval
+     * @param max the maximum interval
+     * @param timeUnit of passed intervals
+     * @return decorrelated jitter {@code BackoffStrategy}
+     */
+    static BackoffStrategy decorrelatedJitter(long base, long max, TimeUnit timeUnit) {
+        long baseNanos = timeUnit.toNanos(base);
+        long maxNanos = timeUnit.toNanos(max);
+        return (attempt, previousInterval) -> {
+            long upper = Math.max(baseNanos, previousInterval) * 3;
+            if (upper <= baseNanos) {
+                return Math.min(baseNanos, maxNanos);
+            }
+            return Math.min(maxNanos, ThreadLocalRandom.current().nextLong(baseNanos, upper));
+        };
+    }
+
+    /**
+     * Grows interval with Fibonacci sequence: {@code initial}, {@code initial},
+     * {@code 2 * initial}, {@code 3 * initial}, {@code 5 * initial} ... up to
+     * {@code max}.
+     *
+     * @param initial interval used after first attempt
+     * @param max the maximum interval
+     * @param timeUnit of passed intervals
+     * @return Fibonacci {@code BackoffStrategy}
+     */
+    static BackoffStrategy fibonacci(long initial, long max, TimeUnit timeUnit) {
+        long initialNanos = timeUnit.toNanos(initial);
+        long maxNanos = timeUnit.toNanos(max);
+        return (attempt, previousInterval) -> {
+            long previous = 0;
+            long current = initialNanos;
+            for (int i = 1; i < attempt && current < maxNanos; i++) {
+                long next = previous + current;
+                previous = current;
+                current = next;
+            }
+            return Math.min(current, maxNanos);
+        };
+    }
+
+    /**
+     * Polls with {@code fastInterval} for first {@code fastAttempts} attempts,
+     * and with {@code slowInterval} after that. Cheap checks of waits that
+     * usually finish quickly are noticed almost immediately, while long waits
+     * do not waste CPU.
+     *
+     * @param fastInterval interval used for first attempts
+     * @param fastAttempts number of attempts using {@code fastInterval}
+     * @param slowInterval interval used after first attempts
+     * @param timeUnit of passed intervals
+     * @return fast start {@code BackoffStrategy}
+     */
+    static BackoffStrategy fastStart(long fastInterval, int fastAttempts, long slowInterval, TimeUnit timeUnit) {
+        long fastNanos = timeUnit.toNanos(fastInterval);
+        long slowNanos = timeUnit.toNanos(slowInterval);
+        return (attempt, previousInterval) -> attempt <= fastAttempts ? fastNanos : slowNanos;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.sleep;
+
+import com.watchrabbit.commons.clock.Clock;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parks threads until monotonic {@link Clock#nanoTime()} deadline, so waits
+ * are not affected by wall clock changes. Last {@code spinNanos} before
+ * deadline are spent busy spinning with {@code Thread.onSpinWait()} hint
+ * instead of parking, which bounds wake up jitter to microseconds at cost of
+ * CPU.
+ *
+ * @author Mariusz
+ */
+final class Parker {
+
+    static final long PRECISE_SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private Parker() {
+    }
+
+    /**
+     * Parks current thread until deadline elapses or signal changes its
+     * generation.
+     *
+     * @param blocker object responsible for parking
+     * @param clock source of monotonic time
+     * @param deadline {@code clock.nanoTime()} after which method returns
+     * @param spinNanos time before deadline spent on spinning
+     * @param signal that wakes up thread, may be {@code null}
+     * @param generation of signal observed before parking
+     * @return {@code false} if thread was interrupted, interrupt status is
+     * cleared
+     */
+    static boolean parkUntil(Object blocker, Clock clock, long deadline, long spinNanos, SleepSignal signal, long generation) {
+        long remaining;
+        while (0 < (remaining = deadline - clock.nanoTime())
+                && (signal == null || signal.getGeneration() == generation)) {
+            if (spinNanos < remaining) {
+                clock.parkUntil(blocker, deadline - spinNanos);
+            } else {
+                SpinWait.onSpinWait();
+            }
+            if (Thread.interrupted()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
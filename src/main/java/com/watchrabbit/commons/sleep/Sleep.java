@@ -15,11 +15,14 @@
  */
 package com.watchrabbit.commons.sleep;
 
+import com.watchrabbit.commons.clock.Clock;
+import com.watchrabbit.commons.clock.Clocks;
 import com.watchrabbit.commons.exception.SystemException;
-import static com.watchrabbit.commons.exception.Throwables.suppress;
 import java.util.Collection;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  *
@@ -27,21 +30,73 @@ import java.util.concurrent.TimeUnit;
  */
 public class Sleep {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(Sleep.class);
+
+    /**
+     * Backoff used by {@code until*} methods without explicit strategy. Polls
+     * every millisecond at first and slows down to 100 milliseconds, so
+     * quickly met conditions are noticed almost immediately.
+     */
+    public static final BackoffStrategy DEFAULT_BACKOFF = BackoffStrategy.exponential(1, 100, TimeUnit.MILLISECONDS);
+
     /**
      * Causes the current thread to wait until the specified waiting time
-     * elapses.
+     * elapses. Time is measured with monotonic {@code System.nanoTime()}, so
+     * sub-millisecond timeouts are not rounded.
      *
      * <p>
-     * Any {@code InterruptedException}'s are suppress and logged. Any
-     * {@code Exception}'s thrown by callable are propagate as SystemException
+     * Any {@code InterruptedException}'s are suppress and logged, interrupt
+     * status of current thread is restored.
      *
      * @param timeout the maximum time to wait
      * @param unit the time unit of the {@code timeout} argument
-     * @throws SystemException if callable throws exception
      */
-    public static void sleep(long timeout, TimeUnit unit) throws SystemException {
-        suppress((Long sleepTimeout) -> Thread.sleep(sleepTimeout))
-                .accept(TimeUnit.MILLISECONDS.convert(timeout, unit));
+    public static void sleep(long timeout, TimeUnit unit) {
+        sleep(timeout, unit, 0);
+    }
+
+    /**
+     * Causes the current thread to wait until the specified waiting time
+     * elapses, spinning instead of parking just before wake up. Use for
+     * latency sensitive waits that must wake up with microsecond accuracy, at
+     * cost of CPU used by spinning.
+     *
+     * <p>
+     * Any {@code InterruptedException}'s are suppress and logged, interrupt
+     * status of current thread is restored.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the time unit of the {@code timeout} argument
+     */
+    public static void sleepPrecisely(long timeout, TimeUnit unit) {
+        sleep(timeout, unit, Parker.PRECISE_SPIN_NANOS);
+    }
+
+    /**
+     * Causes the current thread to wait until monotonic time of passed clock
+     * reaches deadline. Threads waiting on {@code VirtualClock} wake up when
+     * clock is advanced.
+     *
+     * @param deadline {@code clock.nanoTime()} after which method returns
+     * @param clock source of monotonic time
+     * @return {@code false} if thread was interrupted, interrupt status of
+     * current thread is restored
+     */
+    public static boolean sleepUntil(long deadline, Clock clock) {
+        if (!Parker.parkUntil(Sleep.class, clock, deadline, 0, null, 0)) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    private static void sleep(long timeout, TimeUnit unit, long spinNanos) {
+        Clock clock = Clocks.getDefault();
+        long deadline = clock.nanoTime() + unit.toNanos(timeout);
+        if (!Parker.parkUntil(Sleep.class, clock, deadline, spinNanos, null, 0)) {
+            LOGGER.info("Supressed interruption of sleep");
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
@@ -63,9 +118,25 @@ public class Sleep {
      * @throws SystemException if callable throws exception
      */
     public static Boolean untilTrue(Callable<Boolean> callable, long timeout, TimeUnit unit) throws SystemException {
+        return untilTrue(callable, timeout, unit, DEFAULT_BACKOFF);
+    }
+
+    /**
+     * Same as {@link #untilTrue(Callable, long, TimeUnit)}, but interval
+     * between invocations of callable is calculated by passed backoff.
+     *
+     * @param callable callable checked by this method
+     * @param timeout the maximum time to wait
+     * @param unit the time unit of the {@code timeout} argument
+     * @param backoff used to calculate interval between invocations of callable
+     * @return value returned by callable method
+     * @throws SystemException if callable throws exception
+     */
+    public static Boolean untilTrue(Callable<Boolean> callable, long timeout, TimeUnit unit, BackoffStrategy backoff) throws SystemException {
         return SleepBuilder.<Boolean>sleep()
-                .withComparer(argument -> argument)
+                .withPredicate(argument -> argument)
                 .withTimeout(timeout, unit)
+                .withBackoff(backoff)
                 .withStatement(callable)
                 .build();
     }
@@ -89,9 +160,25 @@ public class Sleep {
      * @throws SystemException if callable throws exception
      */
     public static Boolean untilFalse(Callable<Boolean> callable, long timeout, TimeUnit unit) {
+        return untilFalse(callable, timeout, unit, DEFAULT_BACKOFF);
+    }
+
+    /**
+     * Same as {@link #untilFalse(Callable, long, TimeUnit)}, but interval
+     * between invocations of callable is calculated by passed backoff.
+     *
+     * @param callable callable checked by this method
+     * @param timeout the maximum time to wait
+     * @param unit the time unit of the {@code timeout} argument
+     * @param backoff used to calculate interval between invocations of callable
+     * @return value returned by callable method
+     * @throws SystemException if callable throws exception
+     */
+    public static Boolean untilFalse(Callable<Boolean> callable, long timeout, TimeUnit unit, BackoffStrategy backoff) {
         return SleepBuilder.<Boolean>sleep()
-                .withComparer(argument -> !argument)
+                .withPredicate(argument -> !argument)
                 .withTimeout(timeout, unit)
+                .withBackoff(backoff)
                 .withStatement(callable)
                 .build();
     }
@@ -115,9 +202,25 @@ public class Sleep {
      * @throws SystemException if callable throws exception
      */
     public static <T> T untilNull(Callable<T> callable, long timeout, TimeUnit unit) {
+        return untilNull(callable, timeout, unit, DEFAULT_BACKOFF);
+    }
+
+    /**
+     * Same as {@link #untilNull(Callable, long, TimeUnit)}, but interval
+     * between invocations of callable is calculated by passed backoff.
+     *
+     * @param callable callable checked by this method
+     * @param timeout the maximum time to wait
+     * @param unit the time unit of the {@code timeout} argument
+     * @param backoff used to calculate interval between invocations of callable
+     * @return value returned by callable method
+     * @throws SystemException if callable throws exception
+     */
+    public static <T> T untilNull(Callable<T> callable, long timeout, TimeUnit unit, BackoffStrategy backoff) {
         return SleepBuilder.<T>sleep()
-                .withComparer(argument -> argument == null)
+                .withPredicate(argument -> argument == null)
                 .withTimeout(timeout, unit)
+                .withBackoff(backoff)
                 .withStatement(callable)
                 .build();
     }
@@ -141,9 +244,25 @@ public class Sleep {
      * @throws SystemException if callable throws exception
      */
     public static <T> T untilNotNull(Callable<T> callable, long timeout, TimeUnit unit) {
+        return untilNotNull(callable, timeout, unit, DEFAULT_BACKOFF);
+    }
+
+    /**
+     * Same as {@link #untilNotNull(Callable, long, TimeUnit)}, but interval
+     * between invocations of callable is calculated by passed backoff.
+     *
+     * @param callable callable checked by this method
+     * @param timeout the maximum time to wait
+     * @param unit the time unit of the {@code timeout} argument
+     * @param backoff used to calculate interval between invocations of callable
+     * @return value returned by callable method
+     * @throws SystemException if callable throws exception
+     */
+    public static <T> T untilNotNull(Callable<T> callable, long timeout, TimeUnit unit, BackoffStrategy backoff) {
         return SleepBuilder.<T>sleep()
-                .withComparer(argument -> argument != null)
+                .withPredicate(argument -> argument != null)
                 .withTimeout(timeout, unit)
+                .withBackoff(backoff)
                 .withStatement(callable)
                 .build();
     }
@@ -167,9 +286,25 @@ public class Sleep {
      * @throws SystemException if callable throws exception
      */
     public static <T extends Collection> T untilEmpty(Callable<T> callable, long timeout, TimeUnit unit) {
+        return untilEmpty(callable, timeout, unit, DEFAULT_BACKOFF);
+    }
+
+    /**
+     * Same as {@link #untilEmpty(Callable, long, TimeUnit)}, but interval
+     * between invocations of callable is calculated by passed backoff.
+     *
+     * @param callable callable checked by this method
+     * @param timeout the maximum time to wait
+     * @param unit the time unit of the {@code timeout} argument
+     * @param backoff used to calculate interval between invocations of callable
+     * @return value returned by callable method
+     * @throws SystemException if callable throws exception
+     */
+    public static <T extends Collection> T untilEmpty(Callable<T> callable, long timeout, TimeUnit unit, BackoffStrategy backoff) {
         return SleepBuilder.<T>sleep()
-                .withComparer(argument -> argument.isEmpty())
+                .withPredicate(argument -> argument.isEmpty())
                 .withTimeout(timeout, unit)
+                .withBackoff(backoff)
                 .withStatement(callable)
                 .build();
     }
@@ -193,9 +328,25 @@ public class Sleep {
      * @throws SystemException if callable throws exception
      */
     public static <T extends Collection> T untilNotEmpty(Callable<T> callable, long timeout, TimeUnit unit) {
+        return untilNotEmpty(callable, timeout, unit, DEFAULT_BACKOFF);
+    }
+
+    /**
+     * Same as {@link #untilNotEmpty(Callable, long, TimeUnit)}, but interval
+     * between invocations of callable is calculated by passed backoff.
+     *
+     * @param callable callable checked by this method
+     * @param timeout the maximum time to wait
+     * @param unit the time unit of the {@code timeout} argument
+     * @param backoff used to calculate interval between invocations of callable
+     * @return value returned by callable method
+     * @throws SystemException if callable throws exception
+     */
+    public static <T extends Collection> T untilNotEmpty(Callable<T> callable, long timeout, TimeUnit unit, BackoffStrategy backoff) {
         return SleepBuilder.<T>sleep()
-                .withComparer(argument -> !argument.isEmpty())
+                .withPredicate(argument -> !argument.isEmpty())
                 .withTimeout(timeout, unit)
+                .withBackoff(backoff)
                 .withStatement(callable)
                 .build();
     }
@@ -16,9 +16,16 @@
 package com.watchrabbit.commons.sleep;
 
 import com.watchrabbit.commons.callback.ArgumentCallback;
+import com.watchrabbit.commons.callback.BooleanPredicate;
+import com.watchrabbit.commons.clock.Clock;
+import com.watchrabbit.commons.clock.Clocks;
 import com.watchrabbit.commons.exception.SystemException;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,16 +37,28 @@ public class SleepBuilder<T> {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SleepBuilder.class);
 
-    private long interval = 100;
+    private static final BackoffStrategy DEFAULT_INTERVAL = BackoffStrategy.fixed(100, TimeUnit.MILLISECONDS);
+
+    private BackoffStrategy backoff = DEFAULT_INTERVAL;
 
     private long timeout;
 
-    private ArgumentCallback<Boolean, T> comparer;
+    private long spinNanos;
+
+    private BooleanPredicate<T> comparer;
 
     private Callable<T> statement;
 
     private String name = "sleeper";
 
+    private SleepSignal signal;
+
+    private SleepPoller poller = SleepPoller.getDefault();
+
+    private Clock clock = Clocks.getDefault();
+
+    private boolean lightweight;
+
     private SleepBuilder() {
     }
 
@@ -52,7 +71,21 @@ public class SleepBuilder<T> {
      * @return {@code SleepBuilder} with comparer
      */
     public SleepBuilder<T> withInterval(long interval, TimeUnit timeUnit) {
-        this.interval = timeUnit.toMillis(interval);
+        this.backoff = BackoffStrategy.fixed(interval, timeUnit);
+        return this;
+    }
+
+    /**
+     * Backoff is used by {@code SleepBuilder} to calculate interval between
+     * invocations of breaking condition. Replaces interval set by
+     * {@link #withInterval(long, TimeUnit)}.
+     *
+     * @param backoff used to calculate interval between invocations of
+     * statement
+     * @return {@code SleepBuilder} with backoff
+     */
+    public SleepBuilder<T> withBackoff(BackoffStrategy backoff) {
+        this.backoff = backoff;
         return this;
     }
 
@@ -64,7 +97,22 @@ public class SleepBuilder<T> {
      * @return {@code SleepBuilder} with comparer
      */
     public SleepBuilder<T> withTimeout(long timeout, TimeUnit timeUnit) {
-        this.timeout = timeUnit.toMillis(timeout);
+        this.timeout = timeUnit.toNanos(timeout);
+        return this;
+    }
+
+    /**
+     * Spin threshold is used by {@code SleepBuilder.build()} for latency
+     * sensitive waits. Last part of every interval shorter than threshold is
+     * spent spinning instead of parking thread, so wake ups are accurate to
+     * microseconds at cost of CPU. Ignored by asynchronous sleep.
+     *
+     * @param threshold of spinning before wake up
+     * @param timeUnit of passed threshold
+     * @return {@code SleepBuilder} with spin threshold
+     */
+    public SleepBuilder<T> withSpinThreshold(long threshold, TimeUnit timeUnit) {
+        this.spinNanos = timeUnit.toNanos(threshold);
         return this;
     }
 
@@ -79,6 +127,88 @@ public class SleepBuilder<T> {
         return this;
     }
 
+    /**
+     * Failures of statement are wrapped in {@code SystemException} without
+     * stack trace and logged without stack trace on debug level, interrupted
+     * statement throws shared {@link SystemException#INTERRUPTED}. Use when
+     * failures are expected and frequent.
+     *
+     * @return {@code SleepBuilder} with lightweight exceptions
+     */
+    public SleepBuilder<T> withLightweightExceptions() {
+        this.lightweight = true;
+        return this;
+    }
+
+    /**
+     * Clock used to measure timeout and intervals of sleep.
+     *
+     * @param clock source of monotonic time
+     * @return {@code SleepBuilder} with clock
+     */
+    public SleepBuilder<T> withClock(Clock clock) {
+        this.clock = clock;
+        return this;
+    }
+
+    /**
+     * Signal wakes up sleeper before interval elapses. After every
+     * {@link SleepSignal#signal()} statement is invoked at once, interval is
+     * used only as a fallback when signal is not raised.
+     *
+     * @param signal used by producers to wake up this sleeper
+     * @return {@code SleepBuilder} with signal
+     */
+    public SleepBuilder<T> withSignal(SleepSignal signal) {
+        this.signal = signal;
+        return this;
+    }
+
+    /**
+     * Poller used by {@link #buildAsync()} to schedule and invoke statement.
+     *
+     * @param poller used by asynchronous sleep
+     * @return {@code SleepBuilder} with poller
+     */
+    public SleepBuilder<T> withPoller(SleepPoller poller) {
+        this.poller = poller;
+        return this;
+    }
+
+    /**
+     * Asynchronous sleep invokes statement on passed executor, next
+     * invocations are scheduled on shared timer wheel.
+     *
+     * @param executor used to invoke statement
+     * @return {@code SleepBuilder} with executor
+     */
+    public SleepBuilder<T> withExecutor(Executor executor) {
+        this.poller = SleepPoller.create(executor);
+        return this;
+    }
+
+    /**
+     * Asynchronous sleep schedules and invokes statement on passed scheduler.
+     *
+     * @param scheduler used to schedule and invoke statement
+     * @return {@code SleepBuilder} with scheduler
+     */
+    public SleepBuilder<T> withScheduler(ScheduledExecutorService scheduler) {
+        this.poller = SleepPoller.create(scheduler);
+        return this;
+    }
+
+    /**
+     * Asynchronous sleep invokes every statement on new virtual thread, or on
+     * pool of platform threads if JDK does not support virtual threads.
+     *
+     * @return {@code SleepBuilder} using virtual threads
+     */
+    public SleepBuilder<T> onVirtualThreads() {
+        this.poller = SleepPoller.virtualThreads();
+        return this;
+    }
+
     /**
      * {@code SleepBuilder} invokes statement with provided interval and checks
      * with comparer if returned value should stop sleep loop.
@@ -99,7 +229,41 @@ public class SleepBuilder<T> {
      * @return {@code SleepBuilder} with comparer
      */
     public SleepBuilder<T> withComparer(ArgumentCallback<Boolean, T> comparer) {
-        this.comparer = comparer;
+        this.comparer = argument -> comparer.call(argument);
+        return this;
+    }
+
+    /**
+     * Primitive version of {@link #withComparer(ArgumentCallback)}, that does
+     * not box result of every check.
+     *
+     * @param predicate to set in builder as comparer
+     * @return {@code SleepBuilder} with comparer
+     */
+    public SleepBuilder<T> withPredicate(BooleanPredicate<T> predicate) {
+        this.comparer = predicate;
+        return this;
+    }
+
+    /**
+     * Restores default settings of this builder, so single instance can be
+     * reconfigured and reused instead of creating new builder for every sleep.
+     * Builder keeps no state between invocations of {@link #build()}, so
+     * configured instance can be also built many times.
+     *
+     * @return {@code SleepBuilder} with default settings
+     */
+    public SleepBuilder<T> reset() {
+        this.backoff = DEFAULT_INTERVAL;
+        this.timeout = 0;
+        this.spinNanos = 0;
+        this.comparer = null;
+        this.statement = null;
+        this.name = "sleeper";
+        this.signal = null;
+        this.poller = SleepPoller.getDefault();
+        this.clock = Clocks.getDefault();
+        this.lightweight = false;
         return this;
     }
 
@@ -109,42 +273,126 @@ public class SleepBuilder<T> {
      * elapses.
      *
      * <p>
-     * Condition is checked with interval.
+     * Condition is checked with interval calculated by backoff strategy, or
+     * at once when signal is raised. Timeout is measured with monotonic
+     * {@link Clock#nanoTime()} of builder clock, last check is performed when timeout elapses.
      *
      * <p>
-     * Any {@code InterruptedException}'s are suppress and logged. Any
+     * If current thread is interrupted sleep stops, last value returned by
+     * statement is returned and interrupt status of thread is restored. Any
      * {@code Exception}'s thrown by callable are propagate as SystemException
      *
      * @return value returned by callable method
      * @throws SystemException if callable throws exception
      */
     public T build() {
-        long start = System.currentTimeMillis();
-        long sleepingFor = start + timeout - System.currentTimeMillis();
+        boolean measured = SleepMeters.METRICS.isEnabled();
+        long startedAt = clock.nanoTime();
+        long deadline = startedAt + timeout;
+        long sleepingFor = timeout;
         T result;
+        int attempt = 1;
+        long interval = 0;
+        int polls = 0;
+        boolean timedOut = false;
+        boolean interrupted = false;
+        Runnable wakeUp = null;
+        if (signal != null) {
+            Thread sleeper = Thread.currentThread();
+            wakeUp = () -> LockSupport.unpark(sleeper);
+            signal.addListener(wakeUp);
+        }
         try {
+            long generation = getGeneration();
             result = statement.call();
-            while (comparer.call(result) && 0 < sleepingFor) {
-                LOGGER.debug("Sleeping on: {}", name);
-                LOGGER.debug("Wake up in: {}", sleepingFor);
-                try {
-                    Thread.sleep(interval);
-                } catch (InterruptedException ex) {
-                    LOGGER.error("Sleeper: " + name + " interupted!", ex);
+            polls++;
+            while (comparer.test(result)) {
+                if (sleepingFor <= 0) {
+                    timedOut = true;
                     break;
                 }
-                sleepingFor = start + timeout - System.currentTimeMillis();
+                interval = backoff.nextInterval(attempt++, interval);
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Sleeping on: {}", name);
+                    LOGGER.debug("Wake up in: {} ns", sleepingFor);
+                }
+                long wakeUpAt = clock.nanoTime() + Math.min(interval, sleepingFor);
+                if (!Parker.parkUntil(this, clock, wakeUpAt, spinNanos, signal, generation)) {
+                    LOGGER.error("Sleeper: {} interupted!", name);
+                    Thread.currentThread().interrupt();
+                    interrupted = true;
+                    break;
+                }
+                sleepingFor = deadline - clock.nanoTime();
+                generation = getGeneration();
                 result = statement.call();
-            };
+                polls++;
+            }
         } catch (Exception ex) {
-            LOGGER.error("Callable on sleeper: " + name + " throwed exception!", ex);
-            throw new SystemException("Callable on sleeper: " + name + " throwed exception!", ex);
+            throw failure(name, ex, lightweight);
+        } finally {
+            if (wakeUp != null) {
+                signal.removeListener(wakeUp);
+            }
+            if (measured) {
+                SleepMeters.forName(name).record(polls, clock.nanoTime() - startedAt, timedOut, interrupted);
+            }
         }
         return result;
     }
 
+    private long getGeneration() {
+        return signal == null ? 0 : signal.getGeneration();
+    }
+
+    /**
+     * Starts non blocking sleep on {@link SleepPoller} of this builder, shared
+     * poller is used by default. Statement is invoked with interval on poller
+     * threads until the value returned by
+     * statement is evaluated by comparer to {@code false}, or the specified
+     * waiting time elapses.
+     *
+     * <p>
+     * Returned future is completed with last value returned by statement. Any
+     * {@code Exception}'s thrown by callable completes future exceptionally
+     * with SystemException. Cancelling returned future stops polling.
+     *
+     * @return future of value returned by callable method
+     */
+    public CompletableFuture<T> buildAsync() {
+        return buildAsync(poller);
+    }
+
+    /**
+     * Starts non blocking sleep on passed {@link SleepPoller}.
+     *
+     * @param poller used to schedule invocations of statement
+     * @return future of value returned by callable method
+     * @see #buildAsync()
+     */
+    public CompletableFuture<T> buildAsync(SleepPoller poller) {
+        return new AsyncSleeper<>(poller, clock, statement, comparer, backoff, signal, timeout, name, lightweight)
+                .start();
+    }
+
     public static <T> SleepBuilder<T> sleep() {
         return new SleepBuilder<>();
     }
 
+    static SystemException failure(String name, Exception ex, boolean lightweight) {
+        if (ex instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+        }
+        if (!lightweight) {
+            LOGGER.error("Callable on sleeper: " + name + " throwed exception!", ex);
+            return new SystemException("Callable on sleeper: " + name + " throwed exception!", ex);
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Callable on sleeper: {} throwed exception: {}", name, ex.toString());
+        }
+        if (ex instanceof InterruptedException) {
+            return SystemException.INTERRUPTED;
+        }
+        return SystemException.lightweight("Callable on sleeper: " + name + " throwed exception!", ex);
+    }
 }
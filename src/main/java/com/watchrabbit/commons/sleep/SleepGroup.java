@@ -0,0 +1,326 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.sleep;
+
+import com.watchrabbit.commons.callback.BooleanPredicate;
+import com.watchrabbit.commons.clock.Clock;
+import com.watchrabbit.commons.clock.Clocks;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Waits for many conditions at once. Every condition is polled by
+ * asynchronous sleeper on the same {@link SleepPoller}, so waiting for N
+ * resources takes a handful of poller threads instead of N blocked threads,
+ * and wall time equals the slowest wait instead of sum of all waits.
+ *
+ * <p>
+ * Like in {@code SleepBuilder}, condition is met when comparer evaluates value
+ * returned by statement to {@code false}. Group completes when required number
+ * of conditions is met, or when every condition is done. Conditions still
+ * polling after group completion are cancelled.
+ *
+ * @author Mariusz
+ */
+public class SleepGroup {
+
+    private final List<Condition<?>> conditions = new ArrayList<>();
+
+    private BackoffStrategy backoff = Sleep.DEFAULT_BACKOFF;
+
+    private long timeout;
+
+    private SleepPoller poller = SleepPoller.getDefault();
+
+    private String name = "group";
+
+    private Clock clock = Clocks.getDefault();
+
+    private SleepGroup() {
+    }
+
+    public static SleepGroup group() {
+        return new SleepGroup();
+    }
+
+    /**
+     * Timeout after with every condition stops polling.
+     *
+     * @param timeout after with conditions should stop polling
+     * @param timeUnit of passed timeout
+     * @return {@code SleepGroup} with timeout
+     */
+    public SleepGroup withTimeout(long timeout, TimeUnit timeUnit) {
+        this.timeout = timeUnit.toNanos(timeout);
+        return this;
+    }
+
+    /**
+     * Interval used by every condition between invocations of statement.
+     *
+     * @param interval used to sleep between invocations of statement
+     * @param timeUnit of passed interval
+     * @return {@code SleepGroup} with interval
+     */
+    public SleepGroup withInterval(long interval, TimeUnit timeUnit) {
+        this.backoff = BackoffStrategy.fixed(interval, timeUnit);
+        return this;
+    }
+
+    /**
+     * Backoff used by every condition to calculate interval between
+     * invocations of statement.
+     *
+     * @param backoff used to calculate interval
+     * @return {@code SleepGroup} with backoff
+     */
+    public SleepGroup withBackoff(BackoffStrategy backoff) {
+        this.backoff = backoff;
+        return this;
+    }
+
+    /**
+     * Poller used to schedule and invoke statements of all conditions.
+     *
+     * @param poller used by conditions
+     * @return {@code SleepGroup} with poller
+     */
+    public SleepGroup withPoller(SleepPoller poller) {
+        this.poller = poller;
+        return this;
+    }
+
+    /**
+     * Clock used to measure timeout of conditions.
+     *
+     * @param clock source of monotonic time
+     * @return {@code SleepGroup} with clock
+     */
+    public SleepGroup withClock(Clock clock) {
+        this.clock = clock;
+        return this;
+    }
+
+    /**
+     * Name is used in logs, every condition is logged as name with index.
+     *
+     * @param name name of group
+     * @return {@code SleepGroup} with name
+     */
+    public SleepGroup withName(String name) {
+        this.name = name;
+        return this;
+    }
+
+    /**
+     * Adds condition to this group.
+     *
+     * @param <T> type of value returned by statement
+     * @param statement to invoke with interval
+     * @param comparer evaluating if value returned by statement should stop
+     * polling
+     * @return handle used to read result of condition
+     */
+    public <T> Condition<T> add(Callable<T> statement, BooleanPredicate<T> comparer) {
+        Condition<T> condition = new Condition<>(statement, comparer);
+        conditions.add(condition);
+        return condition;
+    }
+
+    /**
+     * Starts polling and completes when every condition is met.
+     *
+     * @return future of group result
+     */
+    public CompletableFuture<Result> allOf() {
+        return atLeast(conditions.size());
+    }
+
+    /**
+     * Starts polling and completes when first condition is met.
+     *
+     * @return future of group result
+     */
+    public CompletableFuture<Result> anyOf() {
+        return atLeast(Math.min(1, conditions.size()));
+    }
+
+    /**
+     * Starts polling and completes when {@code required} conditions are met.
+     *
+     * @param required number of conditions that must be met
+     * @return future of group result
+     */
+    public CompletableFuture<Result> atLeast(int required) {
+        if (required < 0 || conditions.size() < required) {
+            throw new IllegalArgumentException("Group of " + conditions.size() + " conditions can't meet " + required);
+        }
+        CompletableFuture<Result> group = new CompletableFuture<>();
+        if (required == 0) {
+            group.complete(new Result(conditions, 0, true));
+            return group;
+        }
+        AtomicInteger met = new AtomicInteger();
+        AtomicInteger done = new AtomicInteger();
+        for (int i = 0; i < conditions.size(); i++) {
+            Condition<?> condition = conditions.get(i);
+            condition.start(poller, clock, backoff, timeout, name + "-" + i).whenComplete((value, ex) -> {
+                if (condition.isMet() && met.incrementAndGet() == required) {
+                    group.complete(new Result(conditions, required, true));
+                }
+                if (done.incrementAndGet() == conditions.size()) {
+                    group.complete(new Result(conditions, met.get(), required <= met.get()));
+                }
+            });
+        }
+        group.whenComplete((result, ex) -> conditions.forEach(Condition::cancel));
+        return group;
+    }
+
+    /**
+     * Single condition of {@code SleepGroup}.
+     *
+     * @param <T> type of value returned by statement
+     */
+    public static class Condition<T> {
+
+        private final Callable<T> statement;
+
+        private final BooleanPredicate<T> comparer;
+
+        private volatile CompletableFuture<T> future;
+
+        private volatile boolean met;
+
+        private Condition(Callable<T> statement, BooleanPredicate<T> comparer) {
+            this.statement = statement;
+            this.comparer = comparer;
+        }
+
+        private CompletableFuture<T> start(SleepPoller poller, Clock clock, BackoffStrategy backoff, long timeout, String name) {
+            AsyncSleeper<T> sleeper = new AsyncSleeper<>(poller, clock, statement, comparer, backoff, null, timeout, name, false);
+            future = sleeper.future();
+            CompletableFuture<T> completion = future.handle((value, ex) -> {
+                met = ex == null && !comparer.test(value);
+                return value;
+            });
+            sleeper.start();
+            return completion;
+        }
+
+        private void cancel() {
+            future.cancel(false);
+        }
+
+        /**
+         * Returns {@code true} if comparer stopped polling before timeout.
+         *
+         * @return {@code true} if condition is met
+         */
+        public boolean isMet() {
+            return met;
+        }
+
+        /**
+         * Returns {@code true} if condition is met, timed out, failed or was
+         * cancelled.
+         *
+         * @return {@code true} if condition stopped polling
+         */
+        public boolean isDone() {
+            return future != null && future.isDone();
+        }
+
+        /**
+         * Returns last value returned by statement, or {@code null} if
+         * condition is not done, failed or was cancelled.
+         *
+         * @return value returned by statement
+         */
+        public T getValue() {
+            CompletableFuture<T> current = future;
+            if (current == null || !current.isDone() || current.isCompletedExceptionally()) {
+                return null;
+            }
+            return current.join();
+        }
+
+        /**
+         * Returns exception thrown by statement, or {@code null} if statement
+         * has not failed.
+         *
+         * @return exception thrown by statement
+         */
+        public Throwable getFailure() {
+            CompletableFuture<T> current = future;
+            if (current == null || current.isCancelled() || !current.isCompletedExceptionally()) {
+                return null;
+            }
+            return current.handle((value, ex) -> ex).join();
+        }
+    }
+
+    /**
+     * Result of {@code SleepGroup}.
+     */
+    public static class Result {
+
+        private final List<Condition<?>> conditions;
+
+        private final int met;
+
+        private final boolean satisfied;
+
+        private Result(List<Condition<?>> conditions, int met, boolean satisfied) {
+            this.conditions = Collections.unmodifiableList(conditions);
+            this.met = met;
+            this.satisfied = satisfied;
+        }
+
+        /**
+         * Returns {@code true} if required number of conditions was met before
+         * timeout.
+         *
+         * @return {@code true} if group is satisfied
+         */
+        public boolean isSatisfied() {
+            return satisfied;
+        }
+
+        /**
+         * Returns number of conditions met when group completed.
+         *
+         * @return number of met conditions
+         */
+        public int getMet() {
+            return met;
+        }
+
+        /**
+         * Returns conditions in order of adding to group.
+         *
+         * @return conditions of group
+         */
+        public List<Condition<?>> getConditions() {
+            return conditions;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.sleep;
+
+import com.watchrabbit.commons.metrics.Counter;
+import com.watchrabbit.commons.metrics.MetricsRegistry;
+import com.watchrabbit.commons.metrics.Timer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Meters of sleepers with the same name, cached so sleep does not build meter
+ * names every time it is recorded.
+ *
+ * @author Mariusz
+ */
+final class SleepMeters {
+
+    static final MetricsRegistry METRICS = MetricsRegistry.getDefault();
+
+    private static final Map<String, SleepMeters> BY_NAME = new ConcurrentHashMap<>();
+
+    private final Counter polls;
+
+    private final Counter timeouts;
+
+    private final Counter interruptions;
+
+    private final Timer waits;
+
+    private SleepMeters(String name) {
+        this.polls = METRICS.counter("sleep." + name + ".polls");
+        this.timeouts = METRICS.counter("sleep." + name + ".timeouts");
+        this.interruptions = METRICS.counter("sleep." + name + ".interruptions");
+        this.waits = METRICS.timer("sleep." + name + ".wait");
+    }
+
+    static SleepMeters forName(String name) {
+        return BY_NAME.computeIfAbsent(name, SleepMeters::new);
+    }
+
+    void record(int polls, long waitNanos, boolean timedOut, boolean interrupted) {
+        this.polls.add(polls);
+        this.waits.record(waitNanos);
+        if (timedOut) {
+            timeouts.increment();
+        }
+        if (interrupted) {
+            interruptions.increment();
+        }
+    }
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.sleep;
+
+import com.watchrabbit.commons.clock.Clock;
+import com.watchrabbit.commons.clock.VirtualClock;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non blocking poller used by {@link SleepBuilder#buildAsync()}. Poller decides
+ * where statements are invoked and how next invocations are scheduled:
+ *
+ * <ul>
+ * <li>{@link #getDefault()} and {@link #create(int)} schedule on shared
+ * {@link TimerWheel} and invoke statements on small pool of daemon threads,
+ * <li>{@link #create(Executor)} schedules on shared {@code TimerWheel} and
+ * invokes statements on passed executor,
+ * <li>{@link #create(ScheduledExecutorService)} uses passed scheduler for both,
+ * <li>{@link #virtualThreads()} invokes every statement on new virtual thread
+ * when running on JDK with virtual threads.
+ * </ul>
+ *
+ * So thousands of pending waits use only a handful of threads.
+ *
+ * @author Mariusz
+ */
+public final class SleepPoller {
+
+    private static final TimerWheel SHARED_WHEEL = new TimerWheel(1, TimeUnit.MILLISECONDS, 512, Runnable::run);
+
+    private static final SleepPoller DEFAULT = create(Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    private static final SleepPoller VIRTUAL = new SleepPoller(null, VirtualThreads.newExecutor(), false);
+
+    private final ScheduledExecutorService scheduler;
+
+    private final Executor executor;
+
+    private final boolean owned;
+
+    private final Set<PendingTimeout> pending;
+
+    private volatile boolean shutdown;
+
+    private SleepPoller(ScheduledExecutorService scheduler, Executor executor, boolean owned) {
+        this.scheduler = scheduler;
+        this.executor = executor;
+        this.owned = owned;
+        this.pending = owned ? ConcurrentHashMap.newKeySet() : null;
+    }
+
+    /**
+     * Returns poller shared by all asynchronous sleepers that have not
+     * specified their own poller.
+     *
+     * @return shared {@code SleepPoller}
+     */
+    public static SleepPoller getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns shared poller that invokes every statement on new virtual thread.
+     * On JDK without virtual threads statements are invoked on cached pool of
+     * daemon threads.
+     *
+     * @return shared virtual threads {@code SleepPoller}
+     * @see VirtualThreads#isSupported()
+     */
+    public static SleepPoller virtualThreads() {
+        return VIRTUAL;
+    }
+
+    /**
+     * Creates poller with own pool of daemon worker threads.
+     *
+     * @param workers number of threads invoking statements
+     * @return new {@code SleepPoller}
+     */
+    public static SleepPoller create(int workers) {
+        return new SleepPoller(null, Executors.newFixedThreadPool(workers, new DaemonThreadFactory("rabbit-sleep-poller-")), true);
+    }
+
+    /**
+     * Creates poller that invokes statements on passed executor.
+     *
+     * @param executor used to invoke statements
+     * @return new {@code SleepPoller}
+     */
+    public static SleepPoller create(Executor executor) {
+        return new SleepPoller(null, executor, false);
+    }
+
+    /**
+     * Creates poller that schedules and invokes statements on passed
+     * scheduler.
+     *
+     * @param scheduler used to schedule and invoke statements
+     * @return new {@code SleepPoller}
+     */
+    public static SleepPoller create(ScheduledExecutorService scheduler) {
+        return new SleepPoller(scheduler, scheduler, false);
+    }
+
+    /**
+     * Shuts down worker pool if it was created by this poller. Executors
+     * passed by caller are never shut down. Timeouts still pending on owned
+     * poller are cancelled, asynchronous sleepers waiting for them are
+     * completed exceptionally.
+     */
+    public void shutdown() {
+        if (owned) {
+            shutdown = true;
+            ((ExecutorService) executor).shutdown();
+            for (PendingTimeout timeout : pending) {
+                timeout.abort(null);
+            }
+        }
+    }
+
+    TimerWheel.Timeout schedule(Runnable task, long delayNanos) {
+        if (owned) {
+            return track(new PendingTimeout(task), delayNanos, null);
+        }
+        if (scheduler == null) {
+            return SHARED_WHEEL.schedule(() -> dispatch(task), delayNanos, TimeUnit.NANOSECONDS);
+        }
+        ScheduledTimeout timeout = new ScheduledTimeout(task);
+        timeout.future = scheduler.schedule(timeout, delayNanos, TimeUnit.NANOSECONDS);
+        return timeout;
+    }
+
+    TimerWheel.Timeout schedule(Runnable task, long delayNanos, Clock clock) {
+        if (owned) {
+            return track(new PendingTimeout(task), delayNanos, clock);
+        }
+        ScheduledTimeout timeout = new ScheduledTimeout(task);
+        Future<?> future = clock.schedule(() -> dispatch(timeout), delayNanos, TimeUnit.NANOSECONDS);
+        if (future == null) {
+            return schedule(task, delayNanos);
+        }
+        timeout.future = future;
+        return timeout;
+    }
+
+    private TimerWheel.Timeout track(PendingTimeout timeout, long delayNanos, Clock clock) {
+        pending.add(timeout);
+        if (shutdown) {
+            timeout.abort(null);
+            return timeout;
+        }
+        Future<?> future = clock == null ? null : clock.schedule(timeout::expire, delayNanos, TimeUnit.NANOSECONDS);
+        if (future == null) {
+            timeout.canceller = SHARED_WHEEL.schedule(timeout::expire, delayNanos, TimeUnit.NANOSECONDS)::cancel;
+        } else {
+            timeout.canceller = () -> future.cancel(false);
+        }
+        if (timeout.isCancelled()) {
+            timeout.canceller.run();
+        }
+        return timeout;
+    }
+
+    private void dispatch(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ex) {
+            if (!(task instanceof Abortable)) {
+                throw ex;
+            }
+            ((Abortable) task).abort(ex);
+        }
+    }
+
+    /**
+     * Runs task on executor of this poller after delay elapses on passed
+     * clock. Clocks with own notion of time schedule the task themselves, so
+     * tasks scheduled with {@link VirtualClock} run when clock is advanced.
+     * Tasks still pending when poller created by
+     * {@link #create(int)} is shut down are cancelled and never run.
+     *
+     * @param task to run
+     * @param delay after which task is run
+     * @param timeUnit of passed delay
+     * @param clock measuring delay
+     * @return handle that cancels task
+     */
+    public TimerWheel.Timeout schedule(Runnable task, long delay, TimeUnit timeUnit, Clock clock) {
+        return schedule(task, timeUnit.toNanos(delay), clock);
+    }
+
+    /**
+     * Runs task on executor of this poller.
+     *
+     * @param task to run
+     */
+    public void execute(Runnable task) {
+        dispatch(task);
+    }
+
+    /**
+     * Task that has to be notified when poller can't run it any more, because
+     * its executor was shut down.
+     */
+    interface Abortable extends Runnable {
+
+        void abort(Exception cause);
+    }
+
+    /**
+     * Timeout of poller owning its workers, tracked until it expires so
+     * {@link #shutdown()} can abort it.
+     */
+    private final class PendingTimeout implements TimerWheel.Timeout {
+
+        private final AtomicInteger state = new AtomicInteger(ScheduledTimeout.WAITING);
+
+        private final Runnable task;
+
+        private volatile Runnable canceller;
+
+        private PendingTimeout(Runnable task) {
+            this.task = task;
+        }
+
+        private void expire() {
+            if (state.compareAndSet(ScheduledTimeout.WAITING, ScheduledTimeout.EXPIRED)) {
+                pending.remove(this);
+                dispatch(task);
+            }
+        }
+
+        private void abort(Exception cause) {
+            if (cancel() && task instanceof Abortable) {
+                ((Abortable) task).abort(cause);
+            }
+        }
+
+        @Override
+        public boolean cancel() {
+            if (state.compareAndSet(ScheduledTimeout.WAITING, ScheduledTimeout.CANCELLED)) {
+                pending.remove(this);
+                Runnable current = canceller;
+                if (current != null) {
+                    current.run();
+                }
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state.get() == ScheduledTimeout.CANCELLED;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return state.get() == ScheduledTimeout.EXPIRED;
+        }
+    }
+
+    private static final class ScheduledTimeout implements TimerWheel.Timeout, Runnable {
+
+        private static final int WAITING = 0;
+
+        private static final int CANCELLED = 1;
+
+        private static final int EXPIRED = 2;
+
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+
+        private final Runnable task;
+
+        private volatile Future<?> future;
+
+        private ScheduledTimeout(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            if (state.compareAndSet(WAITING, EXPIRED)) {
+                task.run();
+            }
+        }
+
+        @Override
+        public boolean cancel() {
+            if (state.compareAndSet(WAITING, CANCELLED)) {
+                Future<?> current = future;
+                if (current != null) {
+                    current.cancel(false);
+                }
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+    }
+
+    static final class DaemonThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        private final String prefix;
+
+        DaemonThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
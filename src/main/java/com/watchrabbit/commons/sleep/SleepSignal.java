@@ -0,0 +1,64 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.sleep;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Handle used by producers to wake up sleepers waiting for their state. After
+ * {@link #signal()} every sleeper built with this signal re-checks its
+ * statement at once instead of waiting out the interval, so interval is only
+ * a fallback ceiling for changes that are not signalled.
+ *
+ * @author Mariusz
+ */
+public final class SleepSignal {
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private final Set<Runnable> listeners = ConcurrentHashMap.newKeySet();
+
+    private SleepSignal() {
+    }
+
+    public static SleepSignal create() {
+        return new SleepSignal();
+    }
+
+    /**
+     * Wakes up all sleepers waiting on this signal.
+     */
+    public void signal() {
+        generation.incrementAndGet();
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+
+    long getGeneration() {
+        return generation.get();
+    }
+
+    void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+}
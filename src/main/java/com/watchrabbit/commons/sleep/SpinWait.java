@@ -0,0 +1,62 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.sleep;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Access to {@code Thread.onSpinWait()} that keeps library working on Java 8.
+ * On JDK 21 and newer this class is replaced by version from
+ * {@code META-INF/versions/21}, older JDK's look up method handle and fall
+ * back to plain busy loop on Java 8.
+ *
+ * @author Mariusz
+ */
+final class SpinWait {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpinWait.class);
+
+    private static final MethodHandle ON_SPIN_WAIT = findOnSpinWait();
+
+    private SpinWait() {
+    }
+
+    /**
+     * Hints processor that current thread is busy waiting.
+     */
+    static void onSpinWait() {
+        if (ON_SPIN_WAIT != null) {
+            try {
+                ON_SPIN_WAIT.invokeExact();
+            } catch (Throwable ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+
+    private static MethodHandle findOnSpinWait() {
+        try {
+            return MethodHandles.lookup().findStatic(Thread.class, "onSpinWait", MethodType.methodType(void.class));
+        } catch (ReflectiveOperationException ex) {
+            LOGGER.debug("Thread.onSpinWait is not supported by this JDK");
+            return null;
+        }
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.sleep;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hashed timer wheel. One ticker thread advances the wheel with fixed tick
+ * duration and hands expired tasks to the {@code Executor}, so thousands of
+ * pending timeouts cost a single thread. Tasks are never run before their
+ * deadline and at most one tick after it.
+ *
+ * <p>
+ * When no task is pending ticker thread is parked until next task is
+ * scheduled.
+ *
+ * @author Mariusz
+ */
+public final class TimerWheel {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TimerWheel.class);
+
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+    private final long tickNanos;
+
+    private final Bucket[] wheel;
+
+    private final int mask;
+
+    private final Executor executor;
+
+    private final Queue<TimerTask> scheduled = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final Thread ticker;
+
+    private final long startTime;
+
+    private volatile boolean stopped;
+
+    private long tick;
+
+    /**
+     * Creates and starts new timer wheel.
+     *
+     * @param tickDuration duration of one tick
+     * @param timeUnit of passed tick duration
+     * @param wheelSize number of buckets, rounded up to power of two
+     * @param executor used to run expired tasks
+     */
+    public TimerWheel(long tickDuration, TimeUnit timeUnit, int wheelSize, Executor executor) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("Tick duration must be positive");
+        }
+        if (wheelSize <= 0 || wheelSize > 1 << 30) {
+            throw new IllegalArgumentException("Wheel size must be between 1 and 2^30");
+        }
+        this.tickNanos = timeUnit.toNanos(tickDuration);
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.executor = executor;
+        this.startTime = System.nanoTime();
+        this.ticker = new Thread(this::run, "rabbit-timer-wheel-" + INSTANCES.incrementAndGet());
+        this.ticker.setDaemon(true);
+        this.ticker.start();
+    }
+
+    /**
+     * Schedules task to be run after the given delay.
+     *
+     * @param task to run
+     * @param delay after with task should be run
+     * @param timeUnit of passed delay
+     * @return {@code Timeout} that can be used to cancel task
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit timeUnit) {
+        if (stopped) {
+            throw new RejectedExecutionException("Timer wheel is stopped");
+        }
+        TimerTask timerTask = new TimerTask(task, System.nanoTime() - startTime + Math.max(0, timeUnit.toNanos(delay)));
+        scheduled.add(timerTask);
+        if (pending.getAndIncrement() == 0) {
+            LockSupport.unpark(ticker);
+        }
+        return timerTask;
+    }
+
+    /**
+     * Returns number of tasks waiting for expiration.
+     *
+     * @return number of pending tasks
+     */
+    public int getPending() {
+        return pending.get();
+    }
+
+    /**
+     * Stops ticker thread. Pending tasks are dropped.
+     */
+    public void stop() {
+        stopped = true;
+        LockSupport.unpark(ticker);
+    }
+
+    private void run() {
+        while (!stopped) {
+            if (pending.get() == 0) {
+                LockSupport.park(this);
+                tick = (System.nanoTime() - startTime) / tickNanos;
+                continue;
+            }
+            long tickEnd = (tick + 1) * tickNanos;
+            long now = System.nanoTime() - startTime;
+            if (now < tickEnd) {
+                LockSupport.parkNanos(this, tickEnd - now);
+                continue;
+            }
+            transferScheduled();
+            expire(wheel[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    private void transferScheduled() {
+        TimerTask task;
+        while ((task = scheduled.poll()) != null) {
+            if (task.isCancelled()) {
+                pending.decrementAndGet();
+                continue;
+            }
+            long expirationTick = Math.max(task.deadline / tickNanos, tick);
+            task.rounds = (expirationTick - tick) / wheel.length;
+            wheel[(int) (expirationTick & mask)].add(task);
+        }
+    }
+
+    private void expire(Bucket bucket) {
+        TimerTask task = bucket.head;
+        while (task != null) {
+            TimerTask next = task.next;
+            if (task.isCancelled()) {
+                bucket.remove(task);
+                pending.decrementAndGet();
+            } else if (task.rounds <= 0) {
+                bucket.remove(task);
+                pending.decrementAndGet();
+                if (task.expire()) {
+                    try {
+                        executor.execute(task.task);
+                    } catch (RuntimeException ex) {
+                        LOGGER.error("Timer task " + task.task + " rejected!", ex);
+                    }
+                }
+            } else {
+                task.rounds--;
+            }
+            task = next;
+        }
+    }
+
+    /**
+     * Handle of task scheduled on {@code TimerWheel}.
+     */
+    public static interface Timeout {
+
+        /**
+         * Cancels the task if it has not expired yet.
+         *
+         * @return {@code true} if task was cancelled by this call
+         */
+        boolean cancel();
+
+        boolean isCancelled();
+
+        boolean isExpired();
+    }
+
+    private static final class TimerTask implements Timeout {
+
+        private static final int WAITING = 0;
+
+        private static final int CANCELLED = 1;
+
+        private static final int EXPIRED = 2;
+
+        private final Runnable task;
+
+        private final long deadline;
+
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+
+        private long rounds;
+
+        private TimerTask next;
+
+        private TimerTask prev;
+
+        private TimerTask(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean cancel() {
+            return state.compareAndSet(WAITING, CANCELLED);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        private boolean expire() {
+            return state.compareAndSet(WAITING, EXPIRED);
+        }
+    }
+
+    private static final class Bucket {
+
+        private TimerTask head;
+
+        private TimerTask tail;
+
+        private void add(TimerTask task) {
+            task.next = null;
+            task.prev = tail;
+            if (tail == null) {
+                head = task;
+            } else {
+                tail.next = task;
+            }
+            tail = task;
+        }
+
+        private void remove(TimerTask task) {
+            if (task.prev == null) {
+                head = task.next;
+            } else {
+                task.prev.next = task.next;
+            }
+            if (task.next == null) {
+                tail = task.prev;
+            } else {
+                task.next.prev = task.prev;
+            }
+            task.next = null;
+            task.prev = null;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.sleep;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Access to virtual threads that keeps library working on Java 8. On JDK 21
+ * and newer this class is replaced by version from
+ * {@code META-INF/versions/21}, older JDK's use reflection and fall back to
+ * cached pool of daemon threads.
+ *
+ * @author Mariusz
+ */
+public final class VirtualThreads {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreads.class);
+
+    private static final Method FACTORY = findFactory();
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Returns {@code true} if current JDK supports virtual threads. Preview
+     * versions of virtual threads on JDK 19 and 20 are supported only with
+     * {@code --enable-preview}.
+     *
+     * @return {@code true} if virtual threads are supported
+     */
+    public static boolean isSupported() {
+        return FACTORY != null;
+    }
+
+    /**
+     * Creates executor starting new virtual thread for every task. On JDK
+     * without virtual threads returns cached pool of daemon threads.
+     *
+     * @return new {@code ExecutorService}
+     */
+    public static ExecutorService newExecutor() {
+        if (FACTORY != null) {
+            try {
+                return (ExecutorService) FACTORY.invoke(null);
+            } catch (ReflectiveOperationException ex) {
+                LOGGER.warn("Can't create virtual thread executor, using platform threads", ex);
+            }
+        }
+        return Executors.newCachedThreadPool(new SleepPoller.DaemonThreadFactory("rabbit-virtual-fallback-"));
+    }
+
+    private static Method findFactory() {
+        Method factory;
+        try {
+            factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException ex) {
+            LOGGER.debug("Virtual threads are not supported by this JDK");
+            return null;
+        }
+        try {
+            ((ExecutorService) factory.invoke(null)).shutdown();
+            return factory;
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            LOGGER.debug("Virtual threads are not enabled in this JDK", ex);
+            return null;
+        }
+    }
+}
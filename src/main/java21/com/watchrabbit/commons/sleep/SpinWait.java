@@ -0,0 +1,32 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.sleep;
+
+/**
+ * JDK 21 version of {@code SpinWait}, packaged in
+ * {@code META-INF/versions/21} of multi-release jar.
+ *
+ * @author Mariusz
+ */
+final class SpinWait {
+
+    private SpinWait() {
+    }
+
+    static void onSpinWait() {
+        Thread.onSpinWait();
+    }
+}
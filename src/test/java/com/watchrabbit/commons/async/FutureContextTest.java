@@ -17,11 +17,20 @@ package com.watchrabbit.commons.async;
 
 import com.watchrabbit.commons.exception.SystemException;
 import static com.watchrabbit.commons.sleep.Sleep.untilFalse;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 
 /**
@@ -30,6 +39,18 @@ import org.junit.Test;
  */
 public class FutureContextTest {
 
+    private ScheduledExecutorService scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
     @Test
     public void shouldResolveOne() {
         CompletableFuture<CountDownLatch> future = new CompletableFuture<>();
@@ -105,6 +126,127 @@ public class FutureContextTest {
 
     }
 
+    @Test(timeout = 2000)
+    public void shouldInvokeConsumersInCompletionOrder() {
+        CompletableFuture<String> slow = new CompletableFuture<>();
+        CompletableFuture<String> fast = new CompletableFuture<>();
+        scheduler.schedule(() -> slow.complete("slow"), 200, TimeUnit.MILLISECONDS);
+        scheduler.schedule(() -> fast.complete("fast"), 50, TimeUnit.MILLISECONDS);
+        List<String> order = new ArrayList<>();
+
+        FutureContext.register(slow, order::add);
+        FutureContext.register(fast, order::add);
+        FutureContext.resolve(1, TimeUnit.SECONDS);
+
+        assertThat(order).containsExactly("fast", "slow");
+    }
+
+    @Test(timeout = 2000)
+    public void shouldResolvePlainFutures() {
+        FutureTask<String> task = new FutureTask<>(() -> "Hello world");
+        scheduler.schedule(task, 50, TimeUnit.MILLISECONDS);
+        Holder holder = new Holder();
+
+        FutureContext.register(task, holder::setValue);
+        FutureContext.resolve(1, TimeUnit.SECONDS);
+
+        assertThat(holder.value).isEqualTo("Hello world");
+    }
+
+    @Test(timeout = 2000)
+    public void shouldLimitResolveWithOverallDeadline() {
+        long start = System.currentTimeMillis();
+        CountDownLatch countDownLatch = new CountDownLatch(1);
+        CompletableFuture<CountDownLatch> done = CompletableFuture.completedFuture(countDownLatch);
+
+        FutureContext.register(new CompletableFuture<String>(), value -> {
+        });
+        FutureContext.register(new CompletableFuture<String>(), value -> {
+        });
+        FutureContext.register(done, latch -> latch.countDown());
+        SystemException exception = null;
+        try {
+            FutureContext.resolve(200, TimeUnit.MILLISECONDS);
+        } catch (SystemException ex) {
+            exception = ex;
+        }
+
+        assertThat(exception).isNotNull();
+        assertThat(exception.getSuppressed()).hasSize(1);
+        assertThat(countDownLatch.getCount()).isEqualTo(0);
+        assertThat(System.currentTimeMillis() - start).isLessThan(400);
+    }
+
+    @Test(timeout = 2000)
+    public void shouldCollectAllFailures() {
+        CompletableFuture<String> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException());
+        CountDownLatch countDownLatch = new CountDownLatch(1);
+
+        FutureContext.register(failed, value -> {
+        });
+        FutureContext.register(CompletableFuture.completedFuture("value"), value -> {
+            throw new IllegalArgumentException();
+        });
+        FutureContext.register(CompletableFuture.completedFuture(countDownLatch), latch -> latch.countDown());
+        SystemException exception = null;
+        try {
+            FutureContext.resolve(1, TimeUnit.SECONDS);
+        } catch (SystemException ex) {
+            exception = ex;
+        }
+
+        assertThat(countDownLatch.getCount()).isEqualTo(0);
+        assertThat(exception).isNotNull();
+        assertThat(exception.getSuppressed()).hasSize(1);
+    }
+
+    @Test(timeout = 2000)
+    public void shouldResolveAsyncWithoutBlocking() {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        Holder holder = new Holder();
+
+        FutureContext.register(future, holder::setValue);
+        CompletableFuture<Void> resolved = FutureContext.resolveAsync();
+
+        assertThat(resolved.isDone()).isFalse();
+        future.complete("Hello world");
+        resolved.join();
+        assertThat(holder.value).isEqualTo("Hello world");
+    }
+
+    @Test(timeout = 2000)
+    public void shouldResolveStagesAndPlainFuturesAsync() {
+        CompletionStage<String> stage = CompletableFuture.supplyAsync(() -> "stage");
+        FutureTask<String> task = new FutureTask<>(() -> "task");
+        scheduler.schedule(task, 50, TimeUnit.MILLISECONDS);
+        List<String> values = new CopyOnWriteArrayList<>();
+
+        FutureContext.register(stage, values::add);
+        FutureContext.register(task, values::add);
+        FutureContext.resolveAsync().join();
+
+        assertThat(values).containsOnly("stage", "task");
+    }
+
+    @Test(timeout = 2000)
+    public void shouldCompleteAsyncExceptionallyOnTimeout() {
+        CountDownLatch countDownLatch = new CountDownLatch(1);
+
+        FutureContext.register(new CompletableFuture<String>(), value -> {
+        }, 100, TimeUnit.MILLISECONDS);
+        FutureContext.register(CompletableFuture.completedFuture(countDownLatch), latch -> latch.countDown());
+        Throwable failure = null;
+        try {
+            FutureContext.resolveAsync().join();
+        } catch (CompletionException ex) {
+            failure = ex.getCause();
+        }
+
+        assertThat(failure).isInstanceOf(SystemException.class);
+        assertThat(countDownLatch.getCount()).isEqualTo(0);
+    }
+
     public static class Holder {
 
         private String value;
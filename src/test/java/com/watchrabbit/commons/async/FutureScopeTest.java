@@ -0,0 +1,247 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.async;
+
+import com.watchrabbit.commons.clock.VirtualClock;
+import com.watchrabbit.commons.exception.SystemException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.Test;
+
+/**
+ *
+ * @author Mariusz
+ */
+public class FutureScopeTest {
+
+    @Test(timeout = 2000)
+    public void shouldCollectRegistrationsFromManyThreads() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        AtomicInteger consumed = new AtomicInteger();
+
+        try (FutureScope scope = FutureScope.open()) {
+            for (int i = 0; i < 100; i++) {
+                executor.submit(scope.wrap(() -> FutureContext.register(CompletableFuture.completedFuture(1), consumed::addAndGet)));
+            }
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+
+            assertThat(scope.getUnresolved()).isEqualTo(100);
+            scope.resolve(1, TimeUnit.SECONDS);
+        }
+
+        assertThat(consumed.get()).isEqualTo(100);
+    }
+
+    @Test
+    public void shouldBindScopeToCurrentThreadUntilClose() {
+        FutureScope scope = FutureScope.open();
+
+        assertThat(FutureScope.current()).isSameAs(scope);
+        FutureContext.register(CompletableFuture.completedFuture(1), value -> {
+        });
+        assertThat(scope.getUnresolved()).isEqualTo(1);
+        FutureContext.resolve();
+        scope.close();
+
+        assertThat(FutureScope.current()).isNull();
+    }
+
+    @Test
+    public void shouldRestorePreviousScopeOnClose() {
+        try (FutureScope outer = FutureScope.open()) {
+            try (FutureScope inner = FutureScope.open()) {
+                assertThat(FutureScope.current()).isSameAs(inner);
+            }
+            assertThat(FutureScope.current()).isSameAs(outer);
+        }
+    }
+
+    @Test
+    public void shouldDetectUnresolvedScope() {
+        FutureScope scope = FutureScope.open();
+        scope.register(new CompletableFuture<String>(), value -> {
+        });
+
+        SystemException exception = null;
+        try {
+            scope.close();
+        } catch (SystemException ex) {
+            exception = ex;
+        }
+
+        assertThat(exception).isNotNull();
+        assertThat(scope.getUnresolved()).isEqualTo(0);
+        assertThat(FutureScope.current()).isNull();
+    }
+
+    @Test(timeout = 2000)
+    public void shouldBindWrappedCallable() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try (FutureScope scope = FutureScope.open()) {
+            FutureScope seen = executor.submit(scope.wrap(FutureScope::current)).get();
+
+            assertThat(seen).isSameAs(scope);
+            assertThat(executor.submit(FutureScope::current).get()).isNull();
+        }
+        executor.shutdown();
+    }
+
+    @Test(expected = SystemException.class)
+    public void shouldRejectRegistrationOverCapacity() {
+        FutureScope scope = new FutureScope().withCapacity(2, BackpressurePolicy.REJECT);
+        scope.register(new CompletableFuture<String>(), value -> {
+        });
+        scope.register(new CompletableFuture<String>(), value -> {
+        });
+
+        scope.register(new CompletableFuture<String>(), value -> {
+        });
+    }
+
+    @Test
+    public void shouldResolveOldestWhenCapacityExhausted() {
+        AtomicInteger consumed = new AtomicInteger();
+        FutureScope scope = new FutureScope().withCapacity(10, BackpressurePolicy.RESOLVE_OLDEST);
+
+        for (int i = 0; i < 1000; i++) {
+            scope.register(CompletableFuture.completedFuture(1), consumed::addAndGet);
+            assertThat(scope.getUnresolved()).isLessThanOrEqualTo(10);
+        }
+
+        assertThat(consumed.get()).isEqualTo(990);
+        scope.resolve();
+        assertThat(consumed.get()).isEqualTo(1000);
+    }
+
+    @Test
+    public void shouldHoldCapacityUntilFutureIsResolved() {
+        AtomicReference<SystemException> rejection = new AtomicReference<>();
+        FutureScope scope = new FutureScope().withCapacity(1, BackpressurePolicy.REJECT);
+        scope.register(CompletableFuture.completedFuture(1), value -> {
+            try {
+                scope.register(CompletableFuture.completedFuture(2), other -> {
+                });
+            } catch (SystemException ex) {
+                rejection.set(ex);
+            }
+        });
+
+        scope.resolve();
+
+        assertThat(rejection.get()).isNotNull();
+        assertThat(scope.getUnresolved()).isEqualTo(0);
+    }
+
+    @Test(timeout = 2000)
+    public void shouldStopWaitingForHungOldestFuture() {
+        AtomicInteger consumed = new AtomicInteger();
+        FutureScope scope = new FutureScope()
+                .withCapacity(1, BackpressurePolicy.RESOLVE_OLDEST, 50, TimeUnit.MILLISECONDS);
+        scope.register(new CompletableFuture<Integer>(), consumed::addAndGet);
+
+        scope.register(CompletableFuture.completedFuture(1), consumed::addAndGet);
+
+        AtomicReference<SystemException> exception = new AtomicReference<>();
+        try {
+            scope.resolve();
+        } catch (SystemException ex) {
+            exception.set(ex);
+        }
+        assertThat(consumed.get()).isEqualTo(1);
+        assertThat(exception.get().getCause()).isInstanceOf(TimeoutException.class);
+    }
+
+    @Test(timeout = 2000)
+    public void shouldBlockUntilOtherThreadResolves() throws Exception {
+        AtomicInteger consumed = new AtomicInteger();
+        FutureScope scope = new FutureScope().withCapacity(1, BackpressurePolicy.BLOCK);
+        scope.register(CompletableFuture.completedFuture(1), consumed::addAndGet);
+
+        CompletableFuture<Void> resolver = CompletableFuture.runAsync(() -> {
+            Thread.yield();
+            scope.resolve();
+        });
+        scope.register(CompletableFuture.completedFuture(1), consumed::addAndGet);
+        resolver.get();
+        scope.resolve();
+
+        assertThat(consumed.get()).isEqualTo(2);
+    }
+
+    @Test(timeout = 2000)
+    public void shouldStreamCompletedFuturesWhileRegistering() {
+        AtomicInteger consumed = new AtomicInteger();
+        FutureScope scope = new FutureScope()
+                .withCapacity(16, BackpressurePolicy.BLOCK)
+                .withStreaming();
+
+        for (int i = 0; i < 10000; i++) {
+            scope.register(CompletableFuture.completedFuture(1), consumed::addAndGet);
+        }
+
+        assertThat(scope.getUnresolved()).isLessThanOrEqualTo(16);
+        scope.resolve(1, TimeUnit.SECONDS);
+        assertThat(consumed.get()).isEqualTo(10000);
+    }
+
+    @Test
+    public void shouldReportFailuresOfStreamedFuturesOnResolve() {
+        CompletableFuture<String> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException());
+        FutureScope scope = new FutureScope()
+                .withCapacity(1, BackpressurePolicy.RESOLVE_OLDEST);
+        scope.register(failed, value -> {
+        });
+        scope.register(CompletableFuture.completedFuture("ok"), value -> {
+        });
+
+        AtomicReference<SystemException> exception = new AtomicReference<>();
+        try {
+            scope.resolve(1, TimeUnit.SECONDS);
+        } catch (SystemException ex) {
+            exception.set(ex);
+        }
+
+        assertThat(exception.get()).isNotNull();
+        assertThat(exception.get().getCause()).isInstanceOf(IllegalStateException.class);
+        assertThat(scope.getUnresolved()).isEqualTo(0);
+    }
+
+    @Test(timeout = 2000)
+    public void shouldTimeOutInVirtualTime() throws Exception {
+        VirtualClock clock = VirtualClock.create();
+        FutureScope scope = new FutureScope().withClock(clock);
+        scope.register(new CompletableFuture<String>(), value -> {
+        });
+
+        CompletableFuture<Void> resolver = CompletableFuture.runAsync(() -> scope.resolve(10, TimeUnit.MINUTES));
+        while (!resolver.isDone()) {
+            clock.advance(1, TimeUnit.MINUTES);
+            Thread.yield();
+        }
+
+        assertThat(resolver.isCompletedExceptionally()).isTrue();
+        assertThat(clock.nanoTime()).isGreaterThanOrEqualTo(TimeUnit.MINUTES.toNanos(10));
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.async;
+
+import com.watchrabbit.commons.clock.VirtualClock;
+import com.watchrabbit.commons.retry.RetryBudget;
+import com.watchrabbit.commons.sleep.SleepPoller;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ *
+ * @author Mariusz
+ */
+public class HedgeTest {
+
+    private final VirtualClock clock = VirtualClock.create();
+
+    private final List<CompletableFuture<String>> requests = new ArrayList<>();
+
+    private final Hedge hedge = Hedge.create()
+            .withClock(clock)
+            .withPoller(SleepPoller.create(Runnable::run))
+            .withInitialDelay(10, TimeUnit.MILLISECONDS);
+
+    @Test
+    public void shouldNotHedgeFastRequest() throws Exception {
+        CompletableFuture<String> result = hedge.call(this::request);
+
+        requests.get(0).complete("first");
+        clock.advance(1, TimeUnit.SECONDS);
+
+        assertThat(result.get()).isEqualTo("first");
+        assertThat(requests).hasSize(1);
+    }
+
+    @Test
+    public void shouldStartBackupRequestAfterDelayAndCancelLoser() throws Exception {
+        CompletableFuture<String> result = hedge.call(this::request);
+
+        clock.advance(9, TimeUnit.MILLISECONDS);
+        assertThat(requests).hasSize(1);
+        clock.advance(1, TimeUnit.MILLISECONDS);
+        assertThat(requests).hasSize(2);
+        requests.get(1).complete("backup");
+
+        assertThat(result.get()).isEqualTo("backup");
+        assertThat(requests.get(0).isCancelled()).isTrue();
+    }
+
+    @Test
+    public void shouldCancelBackupWhenFirstRequestWins() throws Exception {
+        CompletableFuture<String> result = hedge.call(this::request);
+
+        clock.advance(10, TimeUnit.MILLISECONDS);
+        requests.get(0).complete("first");
+
+        assertThat(result.get()).isEqualTo("first");
+        assertThat(requests.get(1).isCancelled()).isTrue();
+    }
+
+    @Test
+    public void shouldWaitForBackupWhenFirstRequestFails() throws Exception {
+        CompletableFuture<String> result = hedge.call(this::request);
+
+        clock.advance(10, TimeUnit.MILLISECONDS);
+        requests.get(0).completeExceptionally(new IOException());
+        assertThat(result.isDone()).isFalse();
+        requests.get(1).completeExceptionally(new IllegalStateException());
+
+        try {
+            result.get();
+            fail("ExecutionException expected");
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause()).isInstanceOf(IllegalStateException.class);
+        }
+    }
+
+    @Test
+    public void shouldStartBackupAtOnceWhenFirstRequestFailsBeforeDelay() throws Exception {
+        CompletableFuture<String> result = hedge.call(this::request);
+
+        requests.get(0).completeExceptionally(new IOException());
+        assertThat(requests).hasSize(2);
+        assertThat(result.isDone()).isFalse();
+        requests.get(1).complete("backup");
+
+        assertThat(result.get()).isEqualTo("backup");
+        clock.advance(1, TimeUnit.SECONDS);
+        assertThat(requests).hasSize(2);
+    }
+
+    @Test
+    public void shouldFailAtOnceWhenBudgetDoesNotAllowBackup() throws Exception {
+        hedge.withBudget(RetryBudget.create(0).withMinRetries(0).withClock(clock));
+        CompletableFuture<String> result = hedge.call(this::request);
+
+        requests.get(0).completeExceptionally(new IOException());
+
+        try {
+            result.get();
+            fail("ExecutionException expected");
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause()).isInstanceOf(IOException.class);
+        }
+        assertThat(requests).hasSize(1);
+    }
+
+    @Test
+    public void shouldLimitBackupRequestsWithBudget() {
+        hedge.withBudget(RetryBudget.create(0).withMinRetries(1).withClock(clock));
+
+        hedge.call(this::request);
+        hedge.call(this::request);
+        clock.advance(10, TimeUnit.MILLISECONDS);
+
+        assertThat(requests).hasSize(3);
+    }
+
+    @Test
+    public void shouldUsePercentileOfLatenciesAsDelay() {
+        hedge.withPercentile(90);
+        for (int i = 0; i < 100; i++) {
+            hedge.call(this::request);
+            clock.advance(i < 90 ? 2 : 5, TimeUnit.MILLISECONDS);
+            requests.get(requests.size() - 1).complete("done");
+        }
+
+        assertThat(hedge.getDelay(TimeUnit.MICROSECONDS)).isBetween(2000L, 2100L);
+    }
+
+    @Test
+    public void shouldMeasureLatencyFromFirstRequestWhenBackupWins() {
+        hedge.withPercentile(95);
+        for (int i = 0; i < 100; i++) {
+            hedge.call(this::request);
+            if (i < 90) {
+                clock.advance(2, TimeUnit.MILLISECONDS);
+            } else {
+                clock.advance(11, TimeUnit.MILLISECONDS);
+            }
+            requests.get(requests.size() - 1).complete("done");
+        }
+
+        assertThat(hedge.getDelay(TimeUnit.MICROSECONDS)).isBetween(11_000L, 11_100L);
+    }
+
+    @Test
+    public void shouldMeasureDefaultBudgetWithClockOfHedge() {
+        for (int i = 0; i < 11; i++) {
+            hedge.call(this::request);
+        }
+        clock.advance(10, TimeUnit.MILLISECONDS);
+        assertThat(requests).hasSize(21);
+
+        clock.advance(20, TimeUnit.SECONDS);
+        hedge.call(this::request);
+        clock.advance(10, TimeUnit.MILLISECONDS);
+
+        assertThat(requests).hasSize(23);
+    }
+
+    @Test
+    public void shouldRegisterHedgedRequestInContext() {
+        AtomicReference<String> consumed = new AtomicReference<>();
+
+        FutureContext.register(() -> CompletableFuture.completedFuture("result"), consumed::set, hedge);
+        FutureContext.resolve();
+
+        assertThat(consumed.get()).isEqualTo("result");
+    }
+
+    private CompletableFuture<String> request() {
+        CompletableFuture<String> request = new CompletableFuture<>();
+        requests.add(request);
+        return request;
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.breaker;
+
+import com.watchrabbit.commons.clock.VirtualClock;
+import com.watchrabbit.commons.exception.SystemException;
+import com.watchrabbit.commons.exception.Throwables;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ *
+ * @author Mariusz
+ */
+public class CircuitBreakerTest {
+
+    private final VirtualClock clock = VirtualClock.create();
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private final CircuitBreaker breaker = CircuitBreaker.create()
+            .withName("test")
+            .withClock(clock)
+            .withWindowSize(10)
+            .withMinimumCalls(5)
+            .withFailureRateThreshold(50)
+            .withOpenDuration(1, TimeUnit.MINUTES)
+            .withHalfOpenCalls(2);
+
+    @Test
+    public void shouldStayClosedBelowFailureRate() {
+        for (int i = 0; i < 100; i++) {
+            record(i % 3 == 0);
+        }
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(breaker.getFailureRate()).isEqualTo(40.0);
+    }
+
+    @Test
+    public void shouldOpenWhenFailureRateIsReached() {
+        record(false);
+        record(false);
+        record(true);
+        record(true);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+        record(true);
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(breaker.tryAcquirePermission()).isNull();
+    }
+
+    @Test
+    public void shouldOpenWhenSlowCallRateIsReached() {
+        breaker.withSlowCallRateThreshold(80, 1, TimeUnit.SECONDS);
+        for (int i = 0; i < 4; i++) {
+            breaker.tryAcquirePermission().onSuccess(TimeUnit.SECONDS.toNanos(2));
+        }
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(breaker.getSlowCallRate()).isEqualTo(-1.0);
+
+        breaker.tryAcquirePermission().onSuccess(TimeUnit.SECONDS.toNanos(2));
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    public void shouldForgetCallsOutsideOfWindow() {
+        record(true);
+        record(true);
+        for (int i = 0; i < 8; i++) {
+            record(false);
+        }
+        assertThat(breaker.getFailureRate()).isEqualTo(20.0);
+
+        record(false);
+        record(false);
+
+        assertThat(breaker.getFailureRate()).isEqualTo(0.0);
+    }
+
+    @Test
+    public void shouldCloseAfterSuccessfulTrialCalls() {
+        open();
+        clock.advance(1, TimeUnit.MINUTES);
+
+        CircuitBreaker.Permission first = breaker.tryAcquirePermission();
+        CircuitBreaker.Permission second = breaker.tryAcquirePermission();
+        assertThat(breaker.tryAcquirePermission()).isNull();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        first.onSuccess(0);
+        second.onSuccess(0);
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(breaker.getFailureRate()).isEqualTo(-1.0);
+    }
+
+    @Test
+    public void shouldOpenAgainAfterFailedTrialCalls() {
+        open();
+        clock.advance(1, TimeUnit.MINUTES);
+
+        breaker.tryAcquirePermission().onError(0);
+        breaker.tryAcquirePermission().onSuccess(0);
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(breaker.tryAcquirePermission()).isNull();
+    }
+
+    @Test
+    public void shouldDropOutcomesOfCallsPermittedInPreviousState() {
+        CircuitBreaker.Permission stale = breaker.tryAcquirePermission();
+        open();
+        clock.advance(1, TimeUnit.MINUTES);
+        CircuitBreaker.Permission trial = breaker.tryAcquirePermission();
+
+        stale.onError(0);
+        stale.onError(0);
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        trial.onSuccess(0);
+        breaker.tryAcquirePermission().onSuccess(0);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void shouldRecordErrorsOfTrialCalls() {
+        open();
+        clock.advance(1, TimeUnit.MINUTES);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                breaker.call(() -> {
+                    throw new AssertionError();
+                });
+                fail("AssertionError expected");
+            } catch (AssertionError ex) {
+                assertThat(breaker.getState()).isNotEqualTo(CircuitBreaker.State.CLOSED);
+            }
+        }
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    public void shouldRecordErrorsOfGuardedCalls() {
+        Predicate<Integer> predicate = Throwables.guard(breaker, true, argument -> {
+            throw new AssertionError();
+        });
+        for (int i = 0; i < 5; i++) {
+            try {
+                predicate.test(i);
+                fail("AssertionError expected");
+            } catch (AssertionError ex) {
+                calls.incrementAndGet();
+            }
+        }
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    public void shouldFailFastWhenGuardedConsumerIsOpen() {
+        Consumer<Integer> consumer = Throwables.guard(breaker, argument -> {
+            calls.incrementAndGet();
+            throw new IOException();
+        });
+        for (int i = 0; i < 100; i++) {
+            try {
+                consumer.accept(i);
+                fail("SystemException expected");
+            } catch (SystemException ex) {
+                if (i >= 5) {
+                    assertThat(ex).isSameAs(breaker.getRejection());
+                }
+            }
+        }
+
+        assertThat(calls.get()).isEqualTo(5);
+    }
+
+    @Test
+    public void shouldReturnDefaultValueWhenGuardedPredicateIsOpen() {
+        Predicate<Integer> predicate = Throwables.guard(breaker, true, argument -> {
+            calls.incrementAndGet();
+            throw new IOException();
+        });
+        for (int i = 0; i < 100; i++) {
+            assertThat(predicate.test(i)).isTrue();
+        }
+
+        assertThat(calls.get()).isEqualTo(5);
+    }
+
+    @Test
+    public void shouldCallThroughBreaker() {
+        assertThat(breaker.call(() -> "result")).isEqualTo("result");
+        try {
+            breaker.call(() -> {
+                throw new IOException();
+            });
+            fail("SystemException expected");
+        } catch (SystemException ex) {
+            assertThat(ex.getCause()).isInstanceOf(IOException.class);
+        }
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void shouldKeepCountsConsistentWhenRecordedConcurrently() throws Exception {
+        breaker.withWindowSize(1000).withFailureRateThreshold(90);
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 100_000; j++) {
+                    record(j % 4 == 0);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(breaker.getFailureRate()).isBetween(10.0, 40.0);
+    }
+
+    private void open() {
+        for (int i = 0; i < 5; i++) {
+            record(true);
+        }
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    private void record(boolean failure) {
+        CircuitBreaker.Permission permission = breaker.tryAcquirePermission();
+        if (failure) {
+            permission.onError(0);
+        } else {
+            permission.onSuccess(0);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.clock;
+
+import com.watchrabbit.commons.sleep.Sleep;
+import java.time.Instant;
+import java.util.Calendar;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ *
+ * @author Mariusz
+ */
+public class CachedClockTest {
+
+    private final CachedClock clock = CachedClock.create(1, TimeUnit.MILLISECONDS);
+
+    @After
+    public void tearDown() {
+        clock.stop();
+    }
+
+    @Test
+    public void shouldReturnTimeCloseToSystemTime() {
+        long before = System.currentTimeMillis();
+
+        assertThat(clock.getTimestamp()).isGreaterThan(before - 1000).isLessThanOrEqualTo(System.currentTimeMillis());
+        assertThat(clock.getInstant().toEpochMilli()).isLessThanOrEqualTo(System.currentTimeMillis());
+        assertThat(clock.getDate()).isNotNull();
+    }
+
+    @Test(timeout = 2000)
+    public void shouldAdvanceWithTicker() {
+        Instant start = clock.getInstant();
+
+        Sleep.untilFalse(() -> clock.getInstant().isAfter(start), 1, TimeUnit.SECONDS);
+
+        assertThat(clock.getInstant().isAfter(start)).isTrue();
+    }
+
+    @Test
+    public void shouldReuseCalendarPerThread() throws Exception {
+        Calendar calendar = clock.getCalendar();
+
+        assertThat(clock.getCalendar()).isSameAs(calendar);
+        assertThat(CompletableFuture.supplyAsync(clock::getCalendar).get()).isNotSameAs(calendar);
+    }
+
+    @Test
+    public void shouldSetCalendarToCurrentTimestamp() {
+        long before = clock.getTimestamp();
+
+        assertThat(clock.getCalendar().getTimeInMillis()).isGreaterThanOrEqualTo(before);
+    }
+
+    @Test
+    public void shouldFreezeAfterStop() {
+        clock.stop();
+        Sleep.sleep(20, TimeUnit.MILLISECONDS);
+        long stopped = clock.getTimestamp();
+
+        Sleep.sleep(20, TimeUnit.MILLISECONDS);
+
+        assertThat(clock.getTimestamp()).isEqualTo(stopped);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.clock;
+
+import java.util.concurrent.CompletableFuture;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.Test;
+
+/**
+ *
+ * @author Mariusz
+ */
+public class HistogramTest {
+
+    @Test
+    public void shouldMapEveryValueToBucketContainingIt() {
+        for (long value = 0; value < 1_000_000; value += 7) {
+            assertBucket(value);
+        }
+        assertBucket(Long.MAX_VALUE);
+        assertBucket(Long.MAX_VALUE / 3);
+    }
+
+    @Test
+    public void shouldReportPercentilesWithinRelativeError() {
+        Histogram histogram = Histogram.create();
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value);
+        }
+
+        Histogram.Snapshot snapshot = histogram.snapshot();
+
+        assertThat(snapshot.getCount()).isEqualTo(100_000);
+        assertThat(snapshot.getMin()).isEqualTo(1);
+        assertThat(snapshot.getMax()).isEqualTo(100_000);
+        assertThat(snapshot.getMean()).isEqualTo(50_000.5);
+        assertThat(snapshot.getValueAtPercentile(50)).isBetween(50_000L, 51_600L);
+        assertThat(snapshot.getValueAtPercentile(99)).isBetween(99_000L, 100_000L);
+        assertThat(snapshot.getValueAtPercentile(100)).isEqualTo(100_000);
+    }
+
+    @Test
+    public void shouldReturnZerosForEmptyHistogram() {
+        Histogram.Snapshot snapshot = Histogram.create().snapshot();
+
+        assertThat(snapshot.getCount()).isEqualTo(0);
+        assertThat(snapshot.getMin()).isEqualTo(0);
+        assertThat(snapshot.getMax()).isEqualTo(0);
+        assertThat(snapshot.getValueAtPercentile(99)).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldRecordConcurrently() throws Exception {
+        Histogram histogram = Histogram.create();
+        CompletableFuture<?>[] writers = new CompletableFuture<?>[4];
+        for (int i = 0; i < writers.length; i++) {
+            writers[i] = CompletableFuture.runAsync(() -> {
+                for (int value = 0; value < 10_000; value++) {
+                    histogram.record(value);
+                }
+            });
+        }
+        CompletableFuture.allOf(writers).get();
+
+        assertThat(histogram.snapshot().getCount()).isEqualTo(40_000);
+    }
+
+    @Test
+    public void shouldResetValues() {
+        Histogram histogram = Histogram.create();
+        histogram.record(10);
+
+        histogram.reset();
+
+        assertThat(histogram.snapshot().getCount()).isEqualTo(0);
+    }
+
+    private void assertBucket(long value) {
+        long highest = Histogram.highestEquivalentValue(Histogram.index(value));
+        assertThat(highest).isGreaterThanOrEqualTo(value);
+        assertThat(highest - value).isLessThanOrEqualTo(Math.max(0, value / 32));
+    }
+}
@@ -16,8 +16,14 @@
 package com.watchrabbit.commons.clock;
 
 import com.watchrabbit.commons.exception.SystemException;
+import com.watchrabbit.commons.metrics.MetricsRegistry;
+import com.watchrabbit.commons.metrics.Timer;
 import static com.watchrabbit.commons.sleep.Sleep.sleep;
+import java.time.Instant;
+import java.util.Calendar;
+import java.util.Date;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import static org.assertj.core.api.Assertions.assertThat;
 import org.junit.Test;
 
@@ -52,4 +58,194 @@ public class StopwatchTest {
                 .create(() -> sleep(1000, TimeUnit.MILLISECONDS))
                 .getExecutionTime(TimeUnit.MILLISECONDS);
     }
+
+    @Test
+    public void shouldMeasureTimeWithPassedClock() {
+        AtomicLong nanoTime = new AtomicLong();
+        Clock clock = new Clock() {
+
+            @Override
+            public Date getDate() {
+                return new Date(getTimestamp());
+            }
+
+            @Override
+            public long getTimestamp() {
+                return TimeUnit.NANOSECONDS.toMillis(nanoTime.get());
+            }
+
+            @Override
+            public Instant getInstant() {
+                return Instant.ofEpochMilli(getTimestamp());
+            }
+
+            @Override
+            public Calendar getCalendar() {
+                Calendar calendar = Calendar.getInstance();
+                calendar.setTimeInMillis(getTimestamp());
+                return calendar;
+            }
+
+            @Override
+            public long nanoTime() {
+                return nanoTime.get();
+            }
+        };
+
+        long executionTime = Stopwatch
+                .create(() -> nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(5)))
+                .withClock(clock)
+                .start()
+                .getExecutionTime(TimeUnit.SECONDS);
+
+        assertThat(executionTime).isEqualTo(5);
+    }
+
+    @Test
+    public void shouldCollectStatisticsOfRepeatedRuns() {
+        AtomicLong invocations = new AtomicLong();
+
+        Stopwatch.Statistics statistics = Stopwatch
+                .create(() -> invocations.incrementAndGet())
+                .withWarmup(100)
+                .repeat(1000);
+
+        assertThat(invocations.get()).isEqualTo(1100);
+        assertThat(statistics.getCount()).isEqualTo(1000);
+        assertThat(statistics.getMin(TimeUnit.NANOSECONDS)).isLessThanOrEqualTo(statistics.getMedian(TimeUnit.NANOSECONDS));
+        assertThat(statistics.getMedian(TimeUnit.NANOSECONDS)).isLessThanOrEqualTo(statistics.get99thPercentile(TimeUnit.NANOSECONDS));
+        assertThat(statistics.get99thPercentile(TimeUnit.NANOSECONDS)).isLessThanOrEqualTo(statistics.get999thPercentile(TimeUnit.NANOSECONDS));
+        assertThat(statistics.get999thPercentile(TimeUnit.NANOSECONDS)).isLessThanOrEqualTo(statistics.getMax(TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    public void shouldAggregateRunsInSharedHistogram() {
+        Histogram histogram = Histogram.create();
+        Stopwatch stopwatch = Stopwatch.create(() -> sleep(1, TimeUnit.MILLISECONDS));
+
+        stopwatch.repeat(5, histogram);
+        Stopwatch.Statistics statistics = stopwatch.repeat(5, histogram);
+
+        assertThat(statistics.getCount()).isEqualTo(10);
+        assertThat(statistics.getMin(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(1);
+    }
+
+    @Test
+    public void shouldMeasureSplitsAndLaps() {
+        VirtualClock clock = VirtualClock.create();
+        Stopwatch stopwatch = Stopwatch.create().withClock(clock).start();
+
+        clock.advance(2, TimeUnit.SECONDS);
+        assertThat(stopwatch.lap(TimeUnit.SECONDS)).isEqualTo(2);
+        clock.advance(3, TimeUnit.SECONDS);
+        assertThat(stopwatch.lap(TimeUnit.SECONDS)).isEqualTo(3);
+
+        assertThat(stopwatch.split(TimeUnit.SECONDS)).isEqualTo(5);
+        assertThat(stopwatch.isRunning()).isTrue();
+    }
+
+    @Test
+    public void shouldPauseAndResume() {
+        VirtualClock clock = VirtualClock.create();
+        Stopwatch stopwatch = Stopwatch.create().withClock(clock).start();
+
+        clock.advance(1, TimeUnit.SECONDS);
+        stopwatch.stop();
+        clock.advance(10, TimeUnit.SECONDS);
+        stopwatch.start();
+        clock.advance(1, TimeUnit.SECONDS);
+        stopwatch.stop();
+
+        assertThat(stopwatch.getExecutionTime(TimeUnit.SECONDS)).isEqualTo(2);
+        assertThat(stopwatch.reset().split(TimeUnit.SECONDS)).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldStopOnCloseOfScope() {
+        VirtualClock clock = VirtualClock.create();
+        Stopwatch stopwatch = Stopwatch.create().withClock(clock);
+
+        for (int i = 0; i < 3; i++) {
+            try (Stopwatch timer = stopwatch.start()) {
+                clock.advance(1, TimeUnit.SECONDS);
+            }
+            clock.advance(1, TimeUnit.HOURS);
+        }
+
+        assertThat(stopwatch.isRunning()).isFalse();
+        assertThat(stopwatch.getExecutionTime(TimeUnit.SECONDS)).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldReturnResultWithTime() {
+        VirtualClock clock = VirtualClock.create();
+        Stopwatch stopwatch = Stopwatch.create().withClock(clock);
+
+        Stopwatch.Timed<String> timed = stopwatch.time(() -> {
+            clock.advance(5, TimeUnit.MILLISECONDS);
+            return "result";
+        });
+
+        assertThat(timed.getResult()).isEqualTo("result");
+        assertThat(timed.getElapsedNanos()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(5));
+        assertThat(stopwatch.getExecutionTime(TimeUnit.MILLISECONDS)).isEqualTo(5);
+    }
+
+    @Test
+    public void shouldNotCountTimedCallableTwiceWhenRunning() {
+        VirtualClock clock = VirtualClock.create();
+        Stopwatch stopwatch = Stopwatch.create().withClock(clock).start();
+
+        Stopwatch.Timed<String> timed = stopwatch.time(() -> {
+            clock.advance(5, TimeUnit.MILLISECONDS);
+            return "result";
+        });
+
+        assertThat(timed.getElapsed(TimeUnit.MILLISECONDS)).isEqualTo(5);
+        assertThat(stopwatch.isRunning()).isTrue();
+        assertThat(stopwatch.split(TimeUnit.MILLISECONDS)).isEqualTo(5);
+        clock.advance(1, TimeUnit.MILLISECONDS);
+        assertThat(stopwatch.stop().getExecutionTime(TimeUnit.MILLISECONDS)).isEqualTo(6);
+    }
+
+    @Test
+    public void shouldRecordMeasuredTimesInTimer() {
+        VirtualClock clock = VirtualClock.create();
+        Timer timer = MetricsRegistry.create().timer("stopwatch");
+        Stopwatch stopwatch = Stopwatch.create().withClock(clock).withTimer(timer);
+
+        stopwatch.start();
+        clock.advance(2, TimeUnit.MILLISECONDS);
+        stopwatch.stop();
+        stopwatch.time(() -> {
+            clock.advance(3, TimeUnit.MILLISECONDS);
+            return "result";
+        });
+        Stopwatch.create(() -> clock.advance(1, TimeUnit.MILLISECONDS))
+                .withClock(clock)
+                .withTimer(timer)
+                .repeat(5);
+
+        Histogram.Snapshot snapshot = timer.snapshot();
+        assertThat(snapshot.getCount()).isEqualTo(7);
+        assertThat(snapshot.getMax()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(3));
+        assertThat(snapshot.getMin()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    @Test(expected = SystemException.class)
+    public void shouldPropagateCheckedExceptionOfTimedCallable() {
+        Stopwatch.create().time(() -> {
+            throw new Exception();
+        });
+    }
+
+    @Test(expected = SystemException.class)
+    public void shouldThrowOnLapOfStoppedStopwatch() {
+        Stopwatch.create().lap(TimeUnit.SECONDS);
+    }
+
+    @Test(expected = SystemException.class)
+    public void shouldThrowOnRepeatWithoutCallable() {
+        Stopwatch.createStarted().repeat(5);
+    }
 }
@@ -18,6 +18,7 @@ package com.watchrabbit.commons.clock;
 import java.time.Instant;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 import static org.assertj.core.api.Assertions.assertThat;
 import org.junit.Test;
 
@@ -71,4 +72,29 @@ public class SystemClockTest {
         assertThat(clock.getInstant()).isEqualTo(instant);
     }
 
+    @Test
+    public void shouldReturnMonotonicTime() {
+        SystemClock clock = SystemClock.getInstance();
+        long nanoTime = clock.nanoTime();
+
+        assertThat(clock.nanoTime()).isGreaterThanOrEqualTo(nanoTime);
+        assertThat(clock.monotonicMillis()).isGreaterThanOrEqualTo(TimeUnit.NANOSECONDS.toMillis(nanoTime));
+    }
+
+    @Test
+    public void shouldReturnEpochMicrosCloseToSystemTime() {
+        long before = System.currentTimeMillis();
+
+        long micros = SystemClock.getInstance().getEpochMicros();
+
+        assertThat(micros).isBetween((before - 2) * 1000, (System.currentTimeMillis() + 2) * 1000);
+    }
+
+    @Test
+    public void shouldReturnEpochMicrosOfProgrammedInstant() {
+        Instant instant = Instant.ofEpochSecond(10, 123_456_789);
+        SystemClock clock = SystemClock.getInstance().withInstantProducer(() -> instant);
+
+        assertThat(clock.getEpochMicros()).isEqualTo(10_123_456L);
+    }
 }
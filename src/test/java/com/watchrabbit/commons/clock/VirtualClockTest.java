@@ -0,0 +1,154 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.clock;
+
+import com.watchrabbit.commons.sleep.Sleep;
+import com.watchrabbit.commons.sleep.SleepBuilder;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ *
+ * @author Mariusz
+ */
+public class VirtualClockTest {
+
+    private final VirtualClock clock = VirtualClock.create(Instant.ofEpochSecond(1000));
+
+    @After
+    public void tearDown() {
+        Clocks.reset();
+    }
+
+    @Test
+    public void shouldMoveOnlyWhenAdvanced() {
+        long nanoTime = clock.nanoTime();
+
+        clock.advance(10, TimeUnit.MINUTES);
+
+        assertThat(clock.nanoTime() - nanoTime).isEqualTo(TimeUnit.MINUTES.toNanos(10));
+        assertThat(clock.getInstant()).isEqualTo(Instant.ofEpochSecond(1600));
+        assertThat(clock.getTimestamp()).isEqualTo(1_600_000L);
+        assertThat(clock.getEpochMicros()).isEqualTo(1_600_000_000L);
+    }
+
+    @Test
+    public void shouldRunScheduledTasksInOrderOfDeadlines() {
+        List<String> order = new CopyOnWriteArrayList<>();
+        clock.schedule(() -> order.add("second"), 2, TimeUnit.SECONDS);
+        clock.schedule(() -> order.add("first"), 1, TimeUnit.SECONDS);
+        clock.schedule(() -> order.add("third"), 2, TimeUnit.SECONDS);
+        clock.schedule(() -> order.add("later"), 1, TimeUnit.HOURS);
+
+        clock.advance(1, TimeUnit.MINUTES);
+
+        assertThat(order).containsExactly("first", "second", "third");
+        assertThat(clock.getWaiting()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotRunCancelledTask() {
+        List<String> order = new CopyOnWriteArrayList<>();
+        Future<?> task = clock.schedule(() -> order.add("cancelled"), 1, TimeUnit.SECONDS);
+
+        task.cancel(false);
+        clock.advance(1, TimeUnit.MINUTES);
+
+        assertThat(order).isEmpty();
+        assertThat(clock.getWaiting()).isEqualTo(0);
+    }
+
+    @Test(timeout = 2000)
+    public void shouldWakeUpBlockingSleepWhenAdvanced() throws Exception {
+        CompletableFuture<Boolean> sleeper = CompletableFuture.supplyAsync(() -> SleepBuilder.<Boolean>sleep()
+                .withClock(clock)
+                .withTimeout(10, TimeUnit.MINUTES)
+                .withInterval(1, TimeUnit.MINUTES)
+                .withPredicate(argument -> argument)
+                .withStatement(() -> true)
+                .build());
+        Sleep.untilFalse(() -> clock.getWaiting() > 0, 1, TimeUnit.SECONDS);
+
+        while (!sleeper.isDone()) {
+            clock.advance(1, TimeUnit.MINUTES);
+            Thread.yield();
+        }
+
+        assertThat(sleeper.get()).isTrue();
+        assertThat(clock.nanoTime()).isGreaterThanOrEqualTo(TimeUnit.MINUTES.toNanos(10));
+    }
+
+    @Test(timeout = 10000)
+    public void shouldNotMissAdvanceConcurrentWithPark() throws Exception {
+        int steps = 10_000;
+        AtomicInteger slept = new AtomicInteger();
+        CompletableFuture<Void> sleeper = CompletableFuture.runAsync(() -> {
+            for (int step = 1; step <= steps; step++) {
+                slept.set(step);
+                Sleep.sleepUntil(TimeUnit.MICROSECONDS.toNanos(step), clock);
+            }
+        });
+
+        for (int step = 1; step <= steps; step++) {
+            while (slept.get() < step) {
+                Thread.yield();
+            }
+            clock.advance(1, TimeUnit.MICROSECONDS);
+        }
+        sleeper.get();
+
+        assertThat(clock.nanoTime()).isEqualTo(TimeUnit.MICROSECONDS.toNanos(steps));
+    }
+
+    @Test(timeout = 2000)
+    public void shouldCompleteAsyncSleepWhenAdvanced() throws Exception {
+        CompletableFuture<Boolean> sleeper = SleepBuilder.<Boolean>sleep()
+                .withClock(clock)
+                .withTimeout(10, TimeUnit.MINUTES)
+                .withInterval(1, TimeUnit.MINUTES)
+                .withPredicate(argument -> argument)
+                .withStatement(() -> true)
+                .buildAsync();
+
+        while (!sleeper.isDone()) {
+            clock.advance(1, TimeUnit.MINUTES);
+            Thread.yield();
+        }
+
+        assertThat(sleeper.get()).isTrue();
+    }
+
+    @Test(timeout = 2000)
+    public void shouldBeUsedAsDefaultClock() throws Exception {
+        Clocks.setDefault(clock);
+
+        CompletableFuture<Void> sleeper = CompletableFuture.runAsync(() -> Sleep.sleep(10, TimeUnit.MINUTES));
+        while (!sleeper.isDone()) {
+            clock.advance(1, TimeUnit.MINUTES);
+            Thread.yield();
+        }
+
+        assertThat(clock.nanoTime()).isGreaterThanOrEqualTo(TimeUnit.MINUTES.toNanos(10));
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.exception;
+
+import com.watchrabbit.commons.callback.CheckedConsumer;
+import com.watchrabbit.commons.clock.VirtualClock;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.helpers.MessageFormatter;
+
+/**
+ *
+ * @author Mariusz
+ */
+public class SuppressionPolicyTest {
+
+    private final List<String> messages = new ArrayList<>();
+
+    private final Logger logger = (Logger) Proxy.newProxyInstance(Logger.class.getClassLoader(), new Class<?>[]{Logger.class}, (proxy, method, args) -> {
+        if (method.getName().equals("info") && args[0] instanceof String) {
+            messages.add(args.length == 2 && args[1] instanceof Object[]
+                    ? MessageFormatter.arrayFormat((String) args[0], (Object[]) args[1]).getMessage()
+                    : (String) args[0]);
+        }
+        return method.getReturnType() == boolean.class ? Boolean.TRUE : null;
+    });
+
+    private final VirtualClock clock = VirtualClock.create();
+
+    private final CheckedConsumer<Object> site = argument -> {
+    };
+
+    private final CheckedConsumer<Object> otherSite = argument -> {
+    };
+
+    @Test
+    public void shouldLogEveryExceptionByDefault() {
+        SuppressionPolicy policy = SuppressionPolicy.create();
+
+        assertThat(logged(policy, site, 10)).isEqualTo(10);
+    }
+
+    @Test
+    public void shouldSampleExceptionsPerCallSite() {
+        SuppressionPolicy policy = SuppressionPolicy.create()
+                .withSampling(10);
+
+        assertThat(logged(policy, site, 100)).isEqualTo(10);
+        assertThat(logged(policy, otherSite, 5)).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldLimitRateOfLogs() {
+        SuppressionPolicy policy = SuppressionPolicy.create()
+                .withClock(clock)
+                .withRateLimit(5, 1, TimeUnit.SECONDS)
+                .withStackTraces(false);
+
+        assertThat(logged(policy, site, 100)).isEqualTo(5);
+        clock.advance(200, TimeUnit.MILLISECONDS);
+        assertThat(logged(policy, site, 100)).isEqualTo(1);
+        clock.advance(1, TimeUnit.MINUTES);
+        assertThat(logged(policy, site, 100)).isEqualTo(5);
+    }
+
+    @Test
+    public void shouldShareStateOfWrappersOfTheSameLambda() {
+        SuppressionPolicy policy = SuppressionPolicy.create()
+                .withSampling(1000);
+        int logged = 0;
+        for (int i = 0; i < 100; i++) {
+            CheckedConsumer<Object> wrapped = argument -> {
+            };
+            logged += logged(policy, wrapped, 1);
+        }
+
+        assertThat(logged).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldSuppressWithPolicy() {
+        SuppressionPolicy policy = SuppressionPolicy.create()
+                .withClock(clock)
+                .withSampling(100)
+                .withSummary(10, TimeUnit.SECONDS)
+                .withStackTraces(false);
+
+        IntStream.range(0, 1000).boxed().forEach(Throwables.suppress(policy, argument -> {
+            throw new IOException();
+        }));
+        clock.advance(10, TimeUnit.SECONDS);
+
+        assertThat(IntStream.range(0, 10).boxed().anyMatch(Throwables.suppress(policy, true, argument -> {
+            throw new IOException();
+        }))).isTrue();
+    }
+
+    @Test
+    public void shouldLogSummaryOfSuppressedExceptions() {
+        SuppressionPolicy policy = SuppressionPolicy.create()
+                .withClock(clock)
+                .withSampling(1000)
+                .withSummary(10, TimeUnit.SECONDS);
+        logged(policy, site, 1000);
+        clock.advance(10, TimeUnit.SECONDS);
+        messages.clear();
+
+        logged(policy, site, 1);
+
+        assertThat(messages).containsExactly("Suppressed 1000 x IOException in last 10 s at " + getClass().getName(), "Supressed exception");
+    }
+
+    private int logged(SuppressionPolicy policy, Object callSite, int exceptions) {
+        int logged = 0;
+        for (int i = 0; i < exceptions; i++) {
+            if (policy.suppressed(callSite, logger, "Supressed exception", new IOException())) {
+                logged++;
+            }
+        }
+        return logged;
+    }
+}
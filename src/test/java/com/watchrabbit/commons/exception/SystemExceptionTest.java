@@ -0,0 +1,62 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.exception;
+
+import java.util.function.Consumer;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ *
+ * @author Mariusz
+ */
+public class SystemExceptionTest {
+
+    @Test
+    public void shouldCreateExceptionWithoutStackTrace() {
+        Exception cause = new Exception("cause");
+
+        SystemException exception = SystemException.lightweight(cause);
+
+        assertThat(exception.getCause()).isSameAs(cause);
+        assertThat(exception.getMessage()).isEqualTo(cause.toString());
+        assertThat(exception.getStackTrace()).isEmpty();
+        assertThat(cause.getStackTrace()).isNotEmpty();
+    }
+
+    @Test
+    public void shouldNotRecordSuppressedExceptionsInSharedInstances() {
+        SystemException.INTERRUPTED.addSuppressed(new Exception());
+
+        assertThat(SystemException.INTERRUPTED.getSuppressed()).isEmpty();
+        assertThat(SystemException.INTERRUPTED.getStackTrace()).isEmpty();
+    }
+
+    @Test
+    public void shouldPropagateLightweightException() {
+        Consumer<Integer> consumer = Throwables.propagateLightweightFromConsumer(integer -> {
+            throw new Exception();
+        });
+        try {
+            consumer.accept(1);
+            fail("SystemException expected");
+        } catch (SystemException ex) {
+            assertThat(ex.getStackTrace()).isEmpty();
+            assertThat(ex.getCause()).isInstanceOf(Exception.class);
+        }
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.limiter;
+
+import com.watchrabbit.commons.clock.VirtualClock;
+import com.watchrabbit.commons.exception.SystemException;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ *
+ * @author Mariusz
+ */
+public class ConcurrencyLimiterTest {
+
+    private final VirtualClock clock = VirtualClock.create();
+
+    @Test
+    public void shouldRejectCallsOverLimit() {
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.create()
+                .withInitialLimit(2)
+                .withClock(clock);
+
+        ConcurrencyLimiter.Permit first = limiter.tryAcquire();
+        ConcurrencyLimiter.Permit second = limiter.tryAcquire();
+
+        assertThat(first).isNotNull();
+        assertThat(second).isNotNull();
+        assertThat(limiter.tryAcquire()).isNull();
+        try {
+            limiter.run(() -> {
+            });
+            fail("SystemException expected");
+        } catch (SystemException ex) {
+            assertThat(ex.getStackTrace()).isEmpty();
+        }
+        first.ignore();
+        assertThat(limiter.getInFlight()).isEqualTo(1);
+        assertThat(limiter.get(() -> "result")).isEqualTo("result");
+    }
+
+    @Test
+    public void shouldDecreaseLimitWhenCallsTimeOut() {
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.create()
+                .withInitialLimit(10)
+                .withStrategy(LimitStrategy.aimd(1, 100, 1, TimeUnit.SECONDS))
+                .withClock(clock);
+
+        try {
+            limiter.call(() -> {
+                throw new TimeoutException();
+            });
+            fail("SystemException expected");
+        } catch (SystemException ex) {
+            assertThat(ex.getCause()).isInstanceOf(TimeoutException.class);
+        }
+
+        assertThat(limiter.getLimit()).isEqualTo(9);
+        assertThat(limiter.getInFlight()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldNotDecreaseLimitWhenCallsFailForOtherReasons() {
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.create()
+                .withInitialLimit(10)
+                .withStrategy(LimitStrategy.aimd(1, 100, 1, TimeUnit.SECONDS))
+                .withClock(clock);
+
+        failWith(limiter, new IOException());
+
+        assertThat(limiter.getLimit()).isEqualTo(10);
+        assertThat(limiter.getInFlight()).isEqualTo(0);
+
+        limiter.withDropOn(IOException.class);
+        failWith(limiter, new IOException());
+
+        assertThat(limiter.getLimit()).isEqualTo(9);
+        assertThat(limiter.getInFlight()).isEqualTo(0);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldCopyOverloadExceptionTypes() {
+        Class<? extends Throwable>[] types = new Class[]{IOException.class};
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.create()
+                .withInitialLimit(10)
+                .withStrategy(LimitStrategy.aimd(1, 100, 1, TimeUnit.SECONDS))
+                .withClock(clock)
+                .withDropOn(types);
+        types[0] = IllegalStateException.class;
+
+        failWith(limiter, new IOException());
+
+        assertThat(limiter.getLimit()).isEqualTo(9);
+    }
+
+    @Test
+    public void shouldReleasePermitWhenCallThrowsError() {
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.create()
+                .withInitialLimit(1)
+                .withClock(clock);
+
+        try {
+            limiter.run(() -> {
+                throw new AssertionError();
+            });
+            fail("AssertionError expected");
+        } catch (AssertionError ex) {
+        }
+
+        assertThat(limiter.getInFlight()).isEqualTo(0);
+        assertThat(limiter.getLimit()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldReleasePermitOnlyOnce() {
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.create()
+                .withInitialLimit(10)
+                .withStrategy(LimitStrategy.aimd(1, 100, 1, TimeUnit.SECONDS))
+                .withClock(clock);
+
+        ConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+        limiter.tryAcquire();
+        permit.dropped();
+        permit.dropped();
+        permit.ignore();
+        permit.success();
+
+        assertThat(limiter.getInFlight()).isEqualTo(1);
+        assertThat(limiter.getLimit()).isEqualTo(9);
+    }
+
+    @Test
+    public void shouldQueueCallsOfOverloadedDependencyWithoutLimit() {
+        FakeDependency dependency = simulate(1_000_000, (limit, rttNanos, inFlight, dropped) -> limit);
+
+        assertThat(dependency.getMeanLatency()).isGreaterThan(100);
+        assertThat(dependency.maxLatency).isGreaterThan(10_000);
+    }
+
+    @Test
+    public void shouldKeepLatencyOfOverloadedDependencyWithAimd() {
+        assertLatencyIsKept(LimitStrategy.aimd(1, 1000, 15, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void shouldKeepLatencyOfOverloadedDependencyWithVegas() {
+        assertLatencyIsKept(LimitStrategy.vegas(1, 1000));
+    }
+
+    @Test
+    public void shouldKeepLatencyOfOverloadedDependencyWithGradient() {
+        assertLatencyIsKept(LimitStrategy.gradient(1, 1000));
+    }
+
+    private void failWith(ConcurrencyLimiter limiter, Exception failure) {
+        try {
+            limiter.call(() -> {
+                throw failure;
+            });
+            fail("SystemException expected");
+        } catch (SystemException ex) {
+            assertThat(ex.getCause()).isSameAs(failure);
+        }
+    }
+
+    private void assertLatencyIsKept(LimitStrategy strategy) {
+        FakeDependency dependency = simulate(100, strategy);
+
+        assertThat(dependency.getMeanLatency()).isLessThan(25);
+        assertThat(dependency.maxLatency).isLessThan(100);
+        assertThat(dependency.completed).isGreaterThan(12_000);
+        assertThat(dependency.rejected).isGreaterThan(0);
+    }
+
+    /**
+     * Offers five calls every millisecond to dependency that has twenty
+     * workers and answers in ten milliseconds, calls over twenty queue and
+     * make latency grow. Without limiter queue grows without bound. Statistics
+     * are collected during last ten seconds, after limit settles.
+     */
+    private FakeDependency simulate(int initialLimit, LimitStrategy strategy) {
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.create()
+                .withInitialLimit(initialLimit)
+                .withStrategy(strategy)
+                .withClock(clock);
+        FakeDependency dependency = new FakeDependency(20, 10);
+
+        for (int millis = 0; millis < 20_000; millis++) {
+            if (millis == 10_000) {
+                dependency.resetStatistics();
+            }
+            for (int i = 0; i < 5; i++) {
+                ConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+                if (permit != null) {
+                    dependency.call(permit);
+                } else {
+                    dependency.rejected++;
+                }
+            }
+            clock.advance(1, TimeUnit.MILLISECONDS);
+        }
+
+        assertThat(limiter.getLimit()).isLessThanOrEqualTo(initialLimit);
+        return dependency;
+    }
+
+    private final class FakeDependency {
+
+        private final int workers;
+
+        private final long latencyMillis;
+
+        private int concurrent;
+
+        private long completed;
+
+        private long totalLatency;
+
+        private long maxLatency;
+
+        private long rejected;
+
+        private FakeDependency(int workers, long latencyMillis) {
+            this.workers = workers;
+            this.latencyMillis = latencyMillis;
+        }
+
+        private void call(ConcurrencyLimiter.Permit permit) {
+            concurrent++;
+            long latency = latencyMillis * Math.max(workers, concurrent) / workers;
+            clock.schedule(() -> {
+                concurrent--;
+                completed++;
+                totalLatency += latency;
+                maxLatency = Math.max(maxLatency, latency);
+                permit.success();
+            }, latency, TimeUnit.MILLISECONDS);
+        }
+
+        private double getMeanLatency() {
+            return completed == 0 ? 0 : (double) totalLatency / completed;
+        }
+
+        private void resetStatistics() {
+            completed = 0;
+            totalLatency = 0;
+            maxLatency = 0;
+            rejected = 0;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.limiter;
+
+import com.watchrabbit.commons.clock.VirtualClock;
+import com.watchrabbit.commons.sleep.SleepPoller;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.Test;
+
+/**
+ *
+ * @author Mariusz
+ */
+public class RateLimiterTest {
+
+    private final VirtualClock clock = VirtualClock.create();
+
+    @Test
+    public void shouldIssueBurstOfTokensFromFullBucket() {
+        RateLimiter limiter = RateLimiter.tokenBucket(5, 10, 1, TimeUnit.SECONDS)
+                .withClock(clock);
+
+        assertThat(acquired(limiter, 100)).isEqualTo(5);
+        clock.advance(99, TimeUnit.MILLISECONDS);
+        assertThat(limiter.tryAcquire()).isFalse();
+        clock.advance(1, TimeUnit.MILLISECONDS);
+        assertThat(acquired(limiter, 100)).isEqualTo(1);
+        clock.advance(1, TimeUnit.MINUTES);
+        assertThat(acquired(limiter, 100)).isEqualTo(5);
+    }
+
+    @Test
+    public void shouldNotAcquireMorePermitsThanCapacityAtOnce() {
+        RateLimiter limiter = RateLimiter.tokenBucket(5, 10, 1, TimeUnit.SECONDS)
+                .withClock(clock);
+
+        assertThat(limiter.tryAcquire(6)).isFalse();
+        assertThat(limiter.tryAcquire(5)).isTrue();
+    }
+
+    @Test
+    public void shouldAdmitCallsWithinToleranceOfGcra() {
+        RateLimiter limiter = RateLimiter.gcra(100, 400, TimeUnit.MILLISECONDS)
+                .withClock(clock);
+
+        assertThat(acquired(limiter, 100)).isEqualTo(5);
+        for (int i = 0; i < 10; i++) {
+            clock.advance(100, TimeUnit.MILLISECONDS);
+            assertThat(acquired(limiter, 100)).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void shouldCompleteReservationAsynchronously() {
+        RateLimiter limiter = RateLimiter.tokenBucket(1, 10, 1, TimeUnit.SECONDS)
+                .withClock(clock)
+                .withPoller(SleepPoller.create(Runnable::run));
+
+        assertThat(limiter.acquireAsync(1).isDone()).isTrue();
+        CompletableFuture<Void> second = limiter.acquireAsync(1);
+        CompletableFuture<Void> third = limiter.acquireAsync(1);
+        assertThat(second.isDone()).isFalse();
+
+        clock.advance(100, TimeUnit.MILLISECONDS);
+        assertThat(second.isDone()).isTrue();
+        assertThat(third.isDone()).isFalse();
+
+        clock.advance(100, TimeUnit.MILLISECONDS);
+        assertThat(third.isDone()).isTrue();
+    }
+
+    @Test
+    public void shouldRefuseReservationLongerThanTimeout() {
+        RateLimiter limiter = RateLimiter.tokenBucket(1, 10, 1, TimeUnit.SECONDS)
+                .withClock(clock);
+
+        assertThat(limiter.tryAcquire()).isTrue();
+        assertThat(limiter.tryAcquire(1, 50, TimeUnit.MILLISECONDS)).isFalse();
+        clock.advance(100, TimeUnit.MILLISECONDS);
+        assertThat(limiter.tryAcquire(1, 50, TimeUnit.MILLISECONDS)).isTrue();
+    }
+
+    @Test(timeout = 1000)
+    public void shouldBlockUntilPermitsAreAvailable() {
+        RateLimiter limiter = RateLimiter.tokenBucket(1, 100, 1, TimeUnit.SECONDS);
+        long start = System.nanoTime();
+
+        for (int i = 0; i < 11; i++) {
+            limiter.acquire();
+        }
+
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(99));
+    }
+
+    @Test
+    public void shouldWarmUpFromColdRate() {
+        RateLimiter limiter = RateLimiter.warmingUp(10, 1, TimeUnit.SECONDS, 1, TimeUnit.SECONDS)
+                .withClock(clock);
+
+        assertThat(limiter.tryAcquire()).isTrue();
+        assertThat(waitForPermit(limiter)).isEqualTo(280);
+        assertThat(waitForPermit(limiter)).isEqualTo(240);
+        assertThat(waitForPermit(limiter)).isEqualTo(200);
+        assertThat(waitForPermit(limiter)).isEqualTo(160);
+        assertThat(waitForPermit(limiter)).isEqualTo(120);
+        for (int i = 0; i < 10; i++) {
+            assertThat(waitForPermit(limiter)).isEqualTo(100);
+        }
+
+        clock.advance(10, TimeUnit.SECONDS);
+        assertThat(limiter.tryAcquire()).isTrue();
+        assertThat(waitForPermit(limiter)).isEqualTo(280);
+    }
+
+    @Test
+    public void shouldWarmUpWithManyStoredPermits() {
+        RateLimiter limiter = RateLimiter.warmingUp(1000, 1, TimeUnit.SECONDS, 3, TimeUnit.MINUTES)
+                .withClock(clock);
+
+        assertThat(acquiredIn(limiter, 1)).isBetween(330, 340);
+        assertThat(acquiredIn(limiter, 200)).isBetween(90_000, 200_000);
+        assertThat(acquiredIn(limiter, 1)).isEqualTo(1000);
+    }
+
+    @Test
+    public void shouldNotIssueMorePermitsWhenAcquiredConcurrently() throws Exception {
+        RateLimiter limiter = RateLimiter.tokenBucket(1000, 1, 1, TimeUnit.HOURS)
+                .withClock(clock);
+        AtomicInteger acquired = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> acquired.addAndGet(acquired(limiter, 10_000)));
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(acquired.get()).isEqualTo(1000);
+    }
+
+    private int acquiredIn(RateLimiter limiter, int seconds) {
+        int acquired = 0;
+        for (int i = 0; i < seconds * 10_000; i++) {
+            while (limiter.tryAcquire()) {
+                acquired++;
+            }
+            clock.advance(100, TimeUnit.MICROSECONDS);
+        }
+        return acquired;
+    }
+
+    private int waitForPermit(RateLimiter limiter) {
+        int waited = 0;
+        while (!limiter.tryAcquire()) {
+            clock.advance(1, TimeUnit.MILLISECONDS);
+            waited++;
+        }
+        return waited;
+    }
+
+    private int acquired(RateLimiter limiter, int tries) {
+        int acquired = 0;
+        for (int i = 0; i < tries; i++) {
+            if (limiter.tryAcquire()) {
+                acquired++;
+            }
+        }
+        return acquired;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.metrics;
+
+import com.watchrabbit.commons.async.FutureContext;
+import com.watchrabbit.commons.async.Hedge;
+import com.watchrabbit.commons.breaker.CircuitBreaker;
+import com.watchrabbit.commons.clock.VirtualClock;
+import com.watchrabbit.commons.exception.Throwables;
+import com.watchrabbit.commons.limiter.ConcurrencyLimiter;
+import com.watchrabbit.commons.retry.Retry;
+import com.watchrabbit.commons.sleep.BackoffStrategy;
+import com.watchrabbit.commons.sleep.SleepBuilder;
+import com.watchrabbit.commons.sleep.SleepPoller;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Mariusz
+ */
+public class MetricsRegistryTest {
+
+    private final MetricsRegistry metrics = MetricsRegistry.getDefault();
+
+    @Before
+    public void setUp() {
+        metrics.reset();
+        metrics.setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        metrics.setEnabled(false);
+        metrics.reset();
+    }
+
+    @Test
+    public void shouldExportMetersSortedByName() {
+        MetricsRegistry registry = MetricsRegistry.create();
+        registry.counter("b").add(2);
+        registry.counter("a").increment();
+        registry.timer("t").record(5, TimeUnit.MILLISECONDS);
+
+        assertThat(registry.getCounters().keySet()).containsExactly("a", "b");
+        assertThat(registry.getCounters().get("b")).isEqualTo(2);
+        assertThat(registry.getTimers().get("t").getMax()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(5));
+        assertThat(registry.counter("a")).isSameAs(registry.counter("a"));
+    }
+
+    @Test
+    public void shouldRecordNamedSleeper() {
+        SleepBuilder.<Boolean>sleep()
+                .withName("metrics-test")
+                .withTimeout(20, TimeUnit.MILLISECONDS)
+                .withInterval(5, TimeUnit.MILLISECONDS)
+                .withPredicate(argument -> argument)
+                .withStatement(() -> true)
+                .build();
+
+        assertThat(metrics.getCounters().get("sleep.metrics-test.polls")).isGreaterThan(1);
+        assertThat(metrics.getCounters().get("sleep.metrics-test.timeouts")).isEqualTo(1);
+        assertThat(metrics.getTimers().get("sleep.metrics-test.wait").getMin()).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test
+    public void shouldRecordResolvedFutures() {
+        FutureContext.register(CompletableFuture.completedFuture(1), value -> {
+        });
+        FutureContext.register(CompletableFuture.completedFuture(2), value -> {
+        });
+        FutureContext.resolve(1, TimeUnit.SECONDS);
+
+        assertThat(metrics.getCounters().get("future.resolved")).isEqualTo(2);
+        assertThat(metrics.getTimers().get("future.resolve").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRecordSuppressedExceptions() {
+        Throwables.suppress(argument -> {
+            throw new Exception();
+        }).accept(null);
+
+        assertThat(metrics.getCounters().get("throwables.suppressed")).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRegisterMetersOfRetryWhenRecorded() {
+        AtomicInteger attempts = new AtomicInteger();
+        Retry retry = Retry.create()
+                .withName("metrics-retry")
+                .withBackoff(BackoffStrategy.fixed(1, TimeUnit.MILLISECONDS));
+
+        assertThat(metrics.getCounters()).doesNotContainKey("retry.metrics-retry.retries");
+        retry.get(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException();
+            }
+            return "done";
+        });
+
+        assertThat(metrics.getCounters().get("retry.metrics-retry.retries")).isEqualTo(1);
+        assertThat(metrics.getCounters()).doesNotContainKey("retry.retry.retries");
+    }
+
+    @Test
+    public void shouldRegisterMetersOfBreakerWhenRecorded() {
+        CircuitBreaker breaker = CircuitBreaker.create()
+                .withName("metrics-breaker")
+                .withMinimumCalls(1);
+
+        assertThat(metrics.getCounters()).doesNotContainKey("breaker.metrics-breaker.opened");
+        breaker.tryAcquirePermission().onError(0);
+        assertThat(breaker.tryAcquirePermission()).isNull();
+
+        assertThat(metrics.getCounters().get("breaker.metrics-breaker.opened")).isEqualTo(1);
+        assertThat(metrics.getCounters().get("breaker.metrics-breaker.rejected")).isEqualTo(1);
+        assertThat(metrics.getCounters()).doesNotContainKey("breaker.breaker.rejected");
+    }
+
+    @Test
+    public void shouldRegisterMetersOfLimiterWhenRecorded() {
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.create()
+                .withName("metrics-limiter")
+                .withInitialLimit(1);
+
+        assertThat(limiter.tryAcquire()).isNotNull();
+        assertThat(metrics.getCounters()).doesNotContainKey("limiter.metrics-limiter.rejected");
+        assertThat(limiter.tryAcquire()).isNull();
+
+        assertThat(metrics.getCounters().get("limiter.metrics-limiter.rejected")).isEqualTo(1);
+        assertThat(metrics.getCounters()).doesNotContainKey("limiter.limiter.rejected");
+    }
+
+    @Test
+    public void shouldRegisterMetersOfHedgeWhenRecorded() {
+        VirtualClock clock = VirtualClock.create();
+        AtomicInteger requests = new AtomicInteger();
+        Hedge hedge = Hedge.create()
+                .withName("metrics-hedge")
+                .withClock(clock)
+                .withPoller(SleepPoller.create(Runnable::run))
+                .withInitialDelay(10, TimeUnit.MILLISECONDS);
+
+        hedge.call(() -> requests.incrementAndGet() == 1 ? new CompletableFuture<>() : CompletableFuture.completedFuture("backup"));
+        assertThat(metrics.getCounters()).doesNotContainKey("hedge.metrics-hedge.hedges");
+        clock.advance(10, TimeUnit.MILLISECONDS);
+
+        assertThat(metrics.getCounters().get("hedge.metrics-hedge.hedges")).isEqualTo(1);
+        assertThat(metrics.getCounters().get("hedge.metrics-hedge.wins")).isEqualTo(1);
+        assertThat(metrics.getCounters()).doesNotContainKey("hedge.hedge.hedges");
+    }
+
+    @Test
+    public void shouldNotRecordWhenDisabled() {
+        metrics.setEnabled(false);
+
+        Throwables.suppress(argument -> {
+            throw new Exception();
+        }).accept(null);
+
+        assertThat(metrics.getCounters().get("throwables.suppressed")).isEqualTo(0);
+    }
+}
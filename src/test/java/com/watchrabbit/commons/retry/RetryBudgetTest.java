@@ -0,0 +1,73 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.retry;
+
+import com.watchrabbit.commons.clock.VirtualClock;
+import java.util.concurrent.TimeUnit;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.Test;
+
+/**
+ *
+ * @author Mariusz
+ */
+public class RetryBudgetTest {
+
+    private final VirtualClock clock = VirtualClock.create();
+
+    private final RetryBudget budget = RetryBudget.create(0.1)
+            .withMinRetries(2)
+            .withWindow(10, TimeUnit.SECONDS)
+            .withClock(clock);
+
+    @Test
+    public void shouldAllowMinimumRetriesWithoutCalls() {
+        assertThat(retries(100)).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldAllowRetriesInProportionToCalls() {
+        for (int i = 0; i < 100; i++) {
+            budget.onCall();
+        }
+
+        assertThat(retries(100)).isEqualTo(12);
+    }
+
+    @Test
+    public void shouldForgetCallsAndRetriesOutsideOfWindow() {
+        for (int i = 0; i < 100; i++) {
+            budget.onCall();
+        }
+        assertThat(retries(100)).isEqualTo(12);
+
+        clock.advance(5, TimeUnit.SECONDS);
+        assertThat(retries(100)).isEqualTo(0);
+
+        clock.advance(5, TimeUnit.SECONDS);
+        assertThat(retries(100)).isEqualTo(2);
+    }
+
+    private int retries(int tries) {
+        int allowed = 0;
+        for (int i = 0; i < tries; i++) {
+            if (budget.tryRetry()) {
+                allowed++;
+            }
+        }
+        return allowed;
+    }
+}
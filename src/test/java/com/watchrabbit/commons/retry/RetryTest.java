@@ -0,0 +1,205 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.retry;
+
+import com.watchrabbit.commons.clock.VirtualClock;
+import com.watchrabbit.commons.exception.SystemException;
+import com.watchrabbit.commons.sleep.BackoffStrategy;
+import com.watchrabbit.commons.sleep.SleepPoller;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ *
+ * @author Mariusz
+ */
+public class RetryTest {
+
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    private final Retry retry = Retry.create()
+            .withName("test")
+            .withBackoff(BackoffStrategy.fixed(1, TimeUnit.MILLISECONDS));
+
+    @Test
+    public void shouldRetryUntilCallSucceeds() {
+        String result = retry.call(() -> failTimes(2));
+
+        assertThat(result).isEqualTo("done");
+        assertThat(attempts.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldStopAfterMaxAttempts() {
+        try {
+            retry.withMaxAttempts(4).call(() -> failTimes(10));
+            fail("SystemException expected");
+        } catch (SystemException ex) {
+            assertThat(ex.getCause()).isInstanceOf(IOException.class);
+        }
+        assertThat(attempts.get()).isEqualTo(4);
+    }
+
+    @Test
+    public void shouldNotRetryFatalExceptions() {
+        try {
+            retry.withAbortOn(IllegalStateException.class).get(() -> {
+                attempts.incrementAndGet();
+                throw new SystemException(new IllegalStateException());
+            });
+            fail("SystemException expected");
+        } catch (SystemException ex) {
+            assertThat(attempts.get()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldCopyFatalExceptionTypes() {
+        Class<? extends Throwable>[] types = new Class[]{IllegalStateException.class};
+        retry.withAbortOn(types).withMaxAttempts(5);
+        types[0] = IOException.class;
+
+        assertThat(retry.call(() -> failTimes(2))).isEqualTo("done");
+    }
+
+    @Test
+    public void shouldRetryOnlyRetryableExceptions() {
+        retry.withRetryOn(IOException.class).withMaxAttempts(5);
+
+        assertThat(retry.call(() -> failTimes(2))).isEqualTo("done");
+        try {
+            retry.get(() -> {
+                attempts.incrementAndGet();
+                throw new IllegalArgumentException();
+            });
+            fail("SystemException expected");
+        } catch (SystemException ex) {
+            assertThat(attempts.get()).isEqualTo(4);
+        }
+    }
+
+    @Test(timeout = 2000)
+    public void shouldNotStartAttemptAfterDeadline() throws Exception {
+        VirtualClock clock = VirtualClock.create();
+        long start = clock.nanoTime();
+        CompletableFuture<String> future = CompletableFuture.supplyAsync(() -> retry.withClock(clock)
+                .withMaxAttempts(100)
+                .withBackoff(BackoffStrategy.fixed(30, TimeUnit.MILLISECONDS))
+                .withDeadline(100, TimeUnit.MILLISECONDS)
+                .call(() -> failTimes(100)));
+
+        for (int advanced = 1; !future.isDone();) {
+            if (clock.getWaiting() > 0 && attempts.get() == advanced) {
+                clock.advance(30, TimeUnit.MILLISECONDS);
+                advanced++;
+            }
+            Thread.yield();
+        }
+
+        try {
+            future.get();
+            fail("ExecutionException expected");
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause()).isInstanceOf(SystemException.class);
+        }
+        assertThat(attempts.get()).isEqualTo(4);
+        assertThat(clock.nanoTime() - start).isLessThan(TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    public void shouldLimitRetriesWithBudget() {
+        retry.withMaxAttempts(3)
+                .withBudget(RetryBudget.create(0).withMinRetries(5));
+
+        Stream.of(1, 2, 3, 4, 5).forEach(retry.consumer(argument -> {
+            attempts.incrementAndGet();
+        }));
+        for (int i = 0; i < 10; i++) {
+            try {
+                retry.call(() -> failTimes(100));
+            } catch (SystemException ex) {
+            }
+        }
+
+        assertThat(attempts.get()).isEqualTo(5 + 10 + 5);
+    }
+
+    @Test
+    public void shouldRetryAsynchronouslyInVirtualTime() throws Exception {
+        VirtualClock clock = VirtualClock.create();
+        CompletableFuture<String> future = retry.withClock(clock)
+                .withPoller(SleepPoller.create(Runnable::run))
+                .withBackoff(BackoffStrategy.fixed(1, TimeUnit.SECONDS))
+                .callAsync(() -> failTimes(2));
+
+        assertThat(attempts.get()).isEqualTo(1);
+        clock.advance(1, TimeUnit.SECONDS);
+        assertThat(attempts.get()).isEqualTo(2);
+        clock.advance(1, TimeUnit.SECONDS);
+
+        assertThat(future.get()).isEqualTo("done");
+        assertThat(attempts.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldFailAsynchronousCallWhenRetriesStop() throws Exception {
+        VirtualClock clock = VirtualClock.create();
+        CompletableFuture<String> future = retry.withClock(clock)
+                .withPoller(SleepPoller.create(Runnable::run))
+                .withMaxAttempts(2)
+                .callAsync(() -> failTimes(10));
+
+        clock.advance(1, TimeUnit.SECONDS);
+
+        try {
+            future.get();
+            fail("ExecutionException expected");
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause()).isInstanceOf(SystemException.class);
+        }
+        assertThat(attempts.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldStopAsynchronousRetriesWhenCancelled() {
+        VirtualClock clock = VirtualClock.create();
+        CompletableFuture<String> future = retry.withClock(clock)
+                .withPoller(SleepPoller.create(Runnable::run))
+                .withMaxAttempts(10)
+                .callAsync(() -> failTimes(10));
+
+        future.cancel(false);
+        clock.advance(1, TimeUnit.MINUTES);
+
+        assertThat(attempts.get()).isEqualTo(1);
+        assertThat(clock.getWaiting()).isEqualTo(0);
+    }
+
+    private String failTimes(int failures) throws IOException {
+        if (attempts.incrementAndGet() <= failures) {
+            throw new IOException();
+        }
+        return "done";
+    }
+}
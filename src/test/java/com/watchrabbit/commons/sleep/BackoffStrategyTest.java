@@ -0,0 +1,160 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.sleep;
+
+import com.watchrabbit.commons.clock.Clock;
+import java.time.Instant;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.Test;
+
+/**
+ *
+ * @author Mariusz
+ */
+public class BackoffStrategyTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void shouldGrowExponentiallyUpToMax() {
+        BackoffStrategy backoff = BackoffStrategy.exponential(1, 10, TimeUnit.MILLISECONDS);
+
+        assertThat(intervals(backoff, 6)).containsExactly(MS, 2 * MS, 4 * MS, 8 * MS, 10 * MS, 10 * MS);
+    }
+
+    @Test
+    public void shouldGrowWithFibonacciUpToMax() {
+        BackoffStrategy backoff = BackoffStrategy.fibonacci(1, 10, TimeUnit.MILLISECONDS);
+
+        assertThat(intervals(backoff, 7)).containsExactly(MS, MS, 2 * MS, 3 * MS, 5 * MS, 8 * MS, 10 * MS);
+    }
+
+    @Test
+    public void shouldSlowDownAfterFastStart() {
+        BackoffStrategy backoff = BackoffStrategy.fastStart(1, 2, 50, TimeUnit.MILLISECONDS);
+
+        assertThat(intervals(backoff, 4)).containsExactly(MS, MS, 50 * MS, 50 * MS);
+    }
+
+    @Test
+    public void shouldKeepJitterBetweenBaseAndMax() {
+        BackoffStrategy backoff = BackoffStrategy.decorrelatedJitter(1, 20, TimeUnit.MILLISECONDS);
+
+        for (long interval : intervals(backoff, 100)) {
+            assertThat(interval).isGreaterThanOrEqualTo(MS).isLessThanOrEqualTo(20 * MS);
+        }
+    }
+
+    @Test(timeout = 1000)
+    public void shouldNoticeQuickConditionWithDefaultBackoff() {
+        long start = System.nanoTime();
+        long readyAt = start + 5 * MS;
+
+        Sleep.untilFalse(() -> System.nanoTime() > readyAt, 1, TimeUnit.SECONDS);
+
+        assertThat(System.nanoTime() - start).isLessThan(20 * MS);
+    }
+
+    @Test
+    public void shouldInvokeStatementOncePerFixedInterval() {
+        assertThat(invocations(BackoffStrategy.fixed(10, TimeUnit.MILLISECONDS))).isEqualTo(11);
+    }
+
+    @Test
+    public void shouldInvokeStatementLessOftenWithExponentialBackoff() {
+        assertThat(invocations(BackoffStrategy.exponential(1, 100, TimeUnit.MILLISECONDS))).isEqualTo(8);
+    }
+
+    @Test
+    public void shouldInvokeStatementLessOftenWithFibonacciBackoff() {
+        assertThat(invocations(BackoffStrategy.fibonacci(1, 100, TimeUnit.MILLISECONDS))).isEqualTo(11);
+    }
+
+    @Test
+    public void shouldInvokeStatementOftenOnlyOnFastStart() {
+        assertThat(invocations(BackoffStrategy.fastStart(1, 5, 50, TimeUnit.MILLISECONDS))).isEqualTo(8);
+    }
+
+    private long[] intervals(BackoffStrategy backoff, int attempts) {
+        long[] intervals = new long[attempts];
+        long previous = 0;
+        for (int i = 0; i < attempts; i++) {
+            previous = backoff.nextInterval(i + 1, previous);
+            intervals[i] = previous;
+        }
+        return intervals;
+    }
+
+    private int invocations(BackoffStrategy backoff) {
+        AtomicInteger counter = new AtomicInteger();
+        SleepBuilder.<Boolean>sleep()
+                .withStatement(() -> {
+                    counter.incrementAndGet();
+                    return true;
+                })
+                .withComparer(result -> result)
+                .withTimeout(100, TimeUnit.MILLISECONDS)
+                .withBackoff(backoff)
+                .withClock(new SteppingClock())
+                .build();
+        return counter.get();
+    }
+
+    /**
+     * Clock which moves forward only when thread parks, so sleeper wakes up
+     * exactly on its intervals.
+     */
+    private static class SteppingClock implements Clock {
+
+        private long nanos;
+
+        @Override
+        public long nanoTime() {
+            return nanos;
+        }
+
+        @Override
+        public void parkNanos(Object blocker, long nanos) {
+            this.nanos += nanos;
+        }
+
+        @Override
+        public long getTimestamp() {
+            return TimeUnit.NANOSECONDS.toMillis(nanos);
+        }
+
+        @Override
+        public Date getDate() {
+            return new Date(getTimestamp());
+        }
+
+        @Override
+        public Instant getInstant() {
+            return Instant.ofEpochMilli(getTimestamp());
+        }
+
+        @Override
+        public Calendar getCalendar() {
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTimeInMillis(getTimestamp());
+            return calendar;
+        }
+    }
+}
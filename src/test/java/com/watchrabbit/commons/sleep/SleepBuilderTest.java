@@ -1,10 +1,20 @@
 package com.watchrabbit.commons.sleep;
 
 import com.watchrabbit.commons.exception.SystemException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
 import org.junit.Test;
 
 /**
@@ -64,4 +74,265 @@ public class SleepBuilderTest {
                 })
                 .build();
     }
+
+    @Test(timeout = 1000)
+    public void shouldCompleteAsyncWhenComparerStops() throws Exception {
+        CountDownLatch latch = new CountDownLatch(5);
+
+        CompletableFuture<Long> future = SleepBuilder.<Long>sleep()
+                .withTimeout(500, TimeUnit.MILLISECONDS)
+                .withInterval(5, TimeUnit.MILLISECONDS)
+                .withComparer(argument -> argument > 0)
+                .withStatement(() -> {
+                    latch.countDown();
+                    return latch.getCount();
+                })
+                .buildAsync();
+
+        assertThat(future.get()).isEqualTo(0);
+    }
+
+    @Test(timeout = 1000)
+    public void shouldCompleteAsyncOnTimeout() throws Exception {
+        long currentTimeMillis = System.currentTimeMillis();
+
+        Boolean value = SleepBuilder.<Boolean>sleep()
+                .withTimeout(100, TimeUnit.MILLISECONDS)
+                .withInterval(10, TimeUnit.MILLISECONDS)
+                .withComparer(argument -> argument)
+                .withStatement(() -> Boolean.TRUE)
+                .buildAsync()
+                .get();
+
+        assertThat(value).isTrue();
+        assertThat(System.currentTimeMillis()).isGreaterThan(currentTimeMillis + 99);
+    }
+
+    @Test(expected = SystemException.class, timeout = 1000)
+    public void shouldCompleteAsyncExceptionally() throws Throwable {
+        try {
+            SleepBuilder.<Boolean>sleep()
+                    .withTimeout(100, TimeUnit.MILLISECONDS)
+                    .withComparer(argument -> argument)
+                    .withStatement(() -> {
+                        throw new RuntimeException();
+                    })
+                    .buildAsync()
+                    .get();
+        } catch (ExecutionException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void shouldHandleManyAsyncSleepersOnFewThreads() {
+        SleepPoller poller = SleepPoller.create(2);
+        long deadline = System.currentTimeMillis() + 200;
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            futures.add(SleepBuilder.<Boolean>sleep()
+                    .withTimeout(1, TimeUnit.SECONDS)
+                    .withInterval(20, TimeUnit.MILLISECONDS)
+                    .withComparer(argument -> !argument)
+                    .withStatement(() -> System.currentTimeMillis() > deadline)
+                    .buildAsync(poller));
+        }
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).join();
+
+        for (CompletableFuture<Boolean> future : futures) {
+            assertThat(future.join()).isTrue();
+        }
+        poller.shutdown();
+    }
+
+    @Test(timeout = 1000)
+    public void shouldFailPendingSleepersOnPollerShutdown() {
+        SleepPoller poller = SleepPoller.create(1);
+        CompletableFuture<Boolean> future = SleepBuilder.<Boolean>sleep()
+                .withTimeout(1, TimeUnit.MINUTES)
+                .withInterval(10, TimeUnit.SECONDS)
+                .withComparer(argument -> argument)
+                .withStatement(() -> Boolean.TRUE)
+                .buildAsync(poller);
+
+        poller.shutdown();
+
+        try {
+            future.join();
+            fail("Sleeper should be aborted");
+        } catch (CompletionException ex) {
+            assertThat(ex.getCause()).isInstanceOf(SystemException.class);
+        }
+    }
+
+    @Test(timeout = 1000)
+    public void shouldRestoreInterruptStatus() {
+        Thread.currentThread().interrupt();
+
+        SleepBuilder.<Boolean>sleep()
+                .withTimeout(500, TimeUnit.MILLISECONDS)
+                .withComparer(argument -> argument)
+                .withStatement(() -> Boolean.TRUE)
+                .build();
+
+        assertThat(Thread.interrupted()).isTrue();
+    }
+
+    @Test(timeout = 1000)
+    public void shouldInvokeStatementOnPassedExecutor() {
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "custom-executor"));
+
+        String threadName = SleepBuilder.<String>sleep()
+                .withTimeout(500, TimeUnit.MILLISECONDS)
+                .withInterval(1, TimeUnit.MILLISECONDS)
+                .withComparer(argument -> false)
+                .withStatement(() -> Thread.currentThread().getName())
+                .withExecutor(executor)
+                .buildAsync()
+                .join();
+
+        assertThat(threadName).isEqualTo("custom-executor");
+        executor.shutdown();
+    }
+
+    @Test(timeout = 1000)
+    public void shouldScheduleOnPassedScheduler() {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        CountDownLatch latch = new CountDownLatch(3);
+
+        Long value = SleepBuilder.<Long>sleep()
+                .withTimeout(500, TimeUnit.MILLISECONDS)
+                .withInterval(5, TimeUnit.MILLISECONDS)
+                .withComparer(argument -> argument > 0)
+                .withStatement(() -> {
+                    latch.countDown();
+                    return latch.getCount();
+                })
+                .withScheduler(scheduler)
+                .buildAsync()
+                .join();
+
+        assertThat(value).isEqualTo(0);
+        scheduler.shutdown();
+    }
+
+    @Test(timeout = 1000)
+    public void shouldRunOnVirtualThreads() {
+        Boolean value = SleepBuilder.<Boolean>sleep()
+                .withTimeout(500, TimeUnit.MILLISECONDS)
+                .withComparer(argument -> !argument)
+                .withStatement(() -> Boolean.TRUE)
+                .onVirtualThreads()
+                .buildAsync()
+                .join();
+
+        assertThat(value).isTrue();
+    }
+
+    @Test
+    public void shouldNotAllocateInPollLoop() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemoryEnabled());
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        long threadId = Thread.currentThread().getId();
+        int[] polls = new int[1];
+        SleepBuilder<Boolean> sleeper = SleepBuilder.<Boolean>sleep()
+                .withTimeout(1, TimeUnit.MINUTES)
+                .withInterval(0, TimeUnit.MILLISECONDS)
+                .withPredicate(argument -> argument)
+                .withStatement(() -> --polls[0] > 0);
+        for (int i = 0; i < 20; i++) {
+            polls[0] = 100_000;
+            sleeper.build();
+        }
+
+        polls[0] = 1_000;
+        long start = threads.getThreadAllocatedBytes(threadId);
+        sleeper.build();
+        long shortSleep = threads.getThreadAllocatedBytes(threadId) - start;
+
+        polls[0] = 1_000_000;
+        start = threads.getThreadAllocatedBytes(threadId);
+        sleeper.build();
+        long longSleep = threads.getThreadAllocatedBytes(threadId) - start;
+
+        assertThat(longSleep - shortSleep).isLessThan(1024);
+    }
+
+    @Test(timeout = 1000)
+    public void shouldCheckStatementAtDeadline() {
+        long start = System.nanoTime();
+
+        SleepBuilder.<Boolean>sleep()
+                .withTimeout(150, TimeUnit.MILLISECONDS)
+                .withInterval(100, TimeUnit.MILLISECONDS)
+                .withSpinThreshold(200, TimeUnit.MICROSECONDS)
+                .withPredicate(argument -> argument)
+                .withStatement(() -> Boolean.TRUE)
+                .build();
+
+        long elapsed = System.nanoTime() - start;
+        assertThat(elapsed).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(150));
+        assertThat(elapsed).isLessThan(TimeUnit.MILLISECONDS.toNanos(190));
+    }
+
+    @Test
+    public void shouldThrowLightweightException() {
+        RuntimeException failure = new RuntimeException();
+        try {
+            SleepBuilder.<Boolean>sleep()
+                    .withTimeout(100, TimeUnit.MILLISECONDS)
+                    .withLightweightExceptions()
+                    .withComparer(argument -> argument)
+                    .withStatement(() -> {
+                        throw failure;
+                    })
+                    .build();
+            fail("SystemException expected");
+        } catch (SystemException ex) {
+            assertThat(ex.getCause()).isSameAs(failure);
+            assertThat(ex.getStackTrace()).isEmpty();
+        }
+    }
+
+    @Test
+    public void shouldCaptureStackTraceAfterReset() {
+        RuntimeException failure = new RuntimeException();
+        SleepBuilder<Boolean> sleeper = SleepBuilder.<Boolean>sleep()
+                .withLightweightExceptions()
+                .reset()
+                .withTimeout(100, TimeUnit.MILLISECONDS)
+                .withComparer(argument -> argument)
+                .withStatement(() -> {
+                    throw failure;
+                });
+        try {
+            sleeper.build();
+            fail("SystemException expected");
+        } catch (SystemException ex) {
+            assertThat(ex.getCause()).isSameAs(failure);
+            assertThat(ex.getStackTrace()).isNotEmpty();
+        }
+    }
+
+    @Test
+    public void shouldThrowSharedExceptionWhenStatementIsInterrupted() {
+        try {
+            SleepBuilder.<Boolean>sleep()
+                    .withTimeout(100, TimeUnit.MILLISECONDS)
+                    .withLightweightExceptions()
+                    .withComparer(argument -> argument)
+                    .withStatement(() -> {
+                        throw new InterruptedException();
+                    })
+                    .build();
+            fail("SystemException expected");
+        } catch (SystemException ex) {
+            assertThat(ex).isSameAs(SystemException.INTERRUPTED);
+            assertThat(Thread.interrupted()).isTrue();
+        }
+    }
 }
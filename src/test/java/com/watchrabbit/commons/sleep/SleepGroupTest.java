@@ -0,0 +1,116 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.sleep;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.Test;
+
+/**
+ *
+ * @author Mariusz
+ */
+public class SleepGroupTest {
+
+    @Test(timeout = 2000)
+    public void shouldWaitForSlowestCondition() {
+        long start = System.currentTimeMillis();
+        SleepGroup group = SleepGroup.group()
+                .withTimeout(1, TimeUnit.SECONDS)
+                .withInterval(10, TimeUnit.MILLISECONDS);
+        SleepGroup.Condition<String> fast = group.add(() -> readyAfter(start, 100), value -> value == null);
+        SleepGroup.Condition<String> slow = group.add(() -> readyAfter(start, 300), value -> value == null);
+        for (int i = 0; i < 50; i++) {
+            group.add(() -> readyAfter(start, 200), value -> value == null);
+        }
+
+        SleepGroup.Result result = group.allOf().join();
+
+        assertThat(result.isSatisfied()).isTrue();
+        assertThat(result.getMet()).isEqualTo(52);
+        assertThat(fast.getValue()).isEqualTo("ready");
+        assertThat(slow.getValue()).isEqualTo("ready");
+        assertThat(System.currentTimeMillis() - start).isLessThan(600);
+    }
+
+    @Test(timeout = 2000)
+    public void shouldCompleteOnFirstConditionAndCancelOthers() {
+        long start = System.currentTimeMillis();
+        SleepGroup group = SleepGroup.group()
+                .withTimeout(1, TimeUnit.SECONDS)
+                .withInterval(10, TimeUnit.MILLISECONDS);
+        SleepGroup.Condition<String> fast = group.add(() -> readyAfter(start, 50), value -> value == null);
+        SleepGroup.Condition<String> never = group.add(() -> null, value -> value == null);
+
+        SleepGroup.Result result = group.anyOf().join();
+
+        assertThat(result.isSatisfied()).isTrue();
+        assertThat(fast.isMet()).isTrue();
+        assertThat(never.isMet()).isFalse();
+        assertThat(never.isDone()).isTrue();
+        assertThat(System.currentTimeMillis() - start).isLessThan(500);
+    }
+
+    @Test(timeout = 2000)
+    public void shouldCompleteWhenQuorumIsMet() {
+        AtomicInteger calls = new AtomicInteger();
+        SleepGroup group = SleepGroup.group()
+                .withTimeout(1, TimeUnit.SECONDS)
+                .withInterval(10, TimeUnit.MILLISECONDS);
+        group.add(() -> true, value -> !value);
+        group.add(() -> true, value -> !value);
+        group.add(() -> calls.incrementAndGet() > 0 ? false : true, value -> !value);
+
+        SleepGroup.Result result = group.atLeast(2).join();
+
+        assertThat(result.isSatisfied()).isTrue();
+        assertThat(result.getMet()).isEqualTo(2);
+    }
+
+    @Test(timeout = 2000)
+    public void shouldNotBeSatisfiedOnTimeout() {
+        SleepGroup group = SleepGroup.group()
+                .withTimeout(100, TimeUnit.MILLISECONDS)
+                .withInterval(10, TimeUnit.MILLISECONDS);
+        group.add(() -> true, value -> !value);
+        SleepGroup.Condition<Boolean> never = group.add(() -> false, value -> !value);
+
+        SleepGroup.Result result = group.allOf().join();
+
+        assertThat(result.isSatisfied()).isFalse();
+        assertThat(result.getMet()).isEqualTo(1);
+        assertThat(never.getValue()).isFalse();
+    }
+
+    @Test(timeout = 2000)
+    public void shouldReportFailedCondition() {
+        SleepGroup group = SleepGroup.group()
+                .withTimeout(100, TimeUnit.MILLISECONDS);
+        SleepGroup.Condition<Boolean> failing = group.add(() -> {
+            throw new IllegalStateException();
+        }, value -> !value);
+
+        SleepGroup.Result result = group.allOf().join();
+
+        assertThat(result.isSatisfied()).isFalse();
+        assertThat(failing.getFailure()).isNotNull();
+    }
+
+    private String readyAfter(long start, long millis) {
+        return System.currentTimeMillis() - start >= millis ? "ready" : null;
+    }
+}
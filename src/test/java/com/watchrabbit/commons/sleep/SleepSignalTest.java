@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.sleep;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ *
+ * @author Mariusz
+ */
+public class SleepSignalTest {
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test(timeout = 1000)
+    public void shouldWakeUpBlockingSleeperOnSignal() {
+        SleepSignal signal = SleepSignal.create();
+        AtomicBoolean ready = new AtomicBoolean();
+        AtomicInteger invocations = new AtomicInteger();
+        executor.schedule(() -> {
+            ready.set(true);
+            signal.signal();
+        }, 50, TimeUnit.MILLISECONDS);
+
+        Boolean value = SleepBuilder.<Boolean>sleep()
+                .withSignal(signal)
+                .withTimeout(10, TimeUnit.SECONDS)
+                .withInterval(5, TimeUnit.SECONDS)
+                .withComparer(argument -> !argument)
+                .withStatement(() -> {
+                    invocations.incrementAndGet();
+                    return ready.get();
+                })
+                .build();
+
+        assertThat(value).isTrue();
+        assertThat(invocations.get()).isEqualTo(2);
+    }
+
+    @Test(timeout = 1000)
+    public void shouldWakeUpAsyncSleeperOnSignal() {
+        SleepSignal signal = SleepSignal.create();
+        AtomicBoolean ready = new AtomicBoolean();
+        executor.schedule(() -> {
+            ready.set(true);
+            signal.signal();
+        }, 50, TimeUnit.MILLISECONDS);
+
+        Boolean value = SleepBuilder.<Boolean>sleep()
+                .withSignal(signal)
+                .withTimeout(10, TimeUnit.SECONDS)
+                .withInterval(5, TimeUnit.SECONDS)
+                .withComparer(argument -> !argument)
+                .withStatement(ready::get)
+                .buildAsync()
+                .join();
+
+        assertThat(value).isTrue();
+    }
+
+    @Test(timeout = 1000)
+    public void shouldFallbackToIntervalWithoutSignal() {
+        SleepSignal signal = SleepSignal.create();
+        AtomicBoolean ready = new AtomicBoolean();
+        executor.schedule(() -> ready.set(true), 50, TimeUnit.MILLISECONDS);
+
+        Boolean value = SleepBuilder.<Boolean>sleep()
+                .withSignal(signal)
+                .withTimeout(10, TimeUnit.SECONDS)
+                .withInterval(20, TimeUnit.MILLISECONDS)
+                .withComparer(argument -> !argument)
+                .withStatement(ready::get)
+                .build();
+
+        assertThat(value).isTrue();
+    }
+}
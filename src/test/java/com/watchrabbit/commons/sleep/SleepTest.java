@@ -140,4 +140,36 @@ public class SleepTest {
 
         assertThat(value.getValue()).isFalse();
     }
+
+    @Test
+    public void shouldSleepLessThanMillisecond() {
+        long start = System.nanoTime();
+
+        Sleep.sleep(300, TimeUnit.MICROSECONDS);
+
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MICROSECONDS.toNanos(300));
+    }
+
+    @Test
+    public void shouldWakeUpPreciselyWhenSpinning() {
+        for (int i = 0; i < 100; i++) {
+            Sleep.sleepPrecisely(100, TimeUnit.MICROSECONDS);
+        }
+        long start = System.nanoTime();
+
+        Sleep.sleepPrecisely(500, TimeUnit.MICROSECONDS);
+
+        long elapsed = System.nanoTime() - start;
+        assertThat(elapsed).isGreaterThanOrEqualTo(TimeUnit.MICROSECONDS.toNanos(500));
+        assertThat(elapsed).isLessThan(TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test(timeout = 1000)
+    public void shouldRestoreInterruptStatusOnSleep() {
+        Thread.currentThread().interrupt();
+
+        Sleep.sleep(100, TimeUnit.MILLISECONDS);
+
+        assertThat(Thread.interrupted()).isTrue();
+    }
 }
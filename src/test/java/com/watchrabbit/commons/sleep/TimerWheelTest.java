@@ -0,0 +1,78 @@
+/*
+ * Copyright 2014 Mariusz.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.watchrabbit.commons.sleep;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ *
+ * @author Mariusz
+ */
+public class TimerWheelTest {
+
+    private final TimerWheel timerWheel = new TimerWheel(1, TimeUnit.MILLISECONDS, 8, Runnable::run);
+
+    @After
+    public void stop() {
+        timerWheel.stop();
+    }
+
+    @Test(timeout = 1000)
+    public void shouldNotRunBeforeDeadline() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+        long[] runAt = new long[1];
+
+        timerWheel.schedule(() -> {
+            runAt[0] = System.nanoTime();
+            latch.countDown();
+        }, 50, TimeUnit.MILLISECONDS);
+        latch.await();
+
+        assertThat(runAt[0] - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test(timeout = 1000)
+    public void shouldRunTasksLongerThanOneRound() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(2);
+        long start = System.nanoTime();
+
+        timerWheel.schedule(latch::countDown, 30, TimeUnit.MILLISECONDS);
+        timerWheel.schedule(latch::countDown, 3, TimeUnit.MILLISECONDS);
+        latch.await();
+
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(30));
+        assertThat(timerWheel.getPending()).isEqualTo(0);
+    }
+
+    @Test(timeout = 1000)
+    public void shouldNotRunCancelledTask() throws InterruptedException {
+        CountDownLatch cancelled = new CountDownLatch(1);
+        CountDownLatch latch = new CountDownLatch(1);
+
+        TimerWheel.Timeout timeout = timerWheel.schedule(cancelled::countDown, 10, TimeUnit.MILLISECONDS);
+        timerWheel.schedule(latch::countDown, 20, TimeUnit.MILLISECONDS);
+
+        assertThat(timeout.cancel()).isTrue();
+        latch.await();
+        assertThat(cancelled.getCount()).isEqualTo(1);
+        assertThat(timeout.isExpired()).isFalse();
+    }
+}